@@ -1,18 +1,34 @@
 package io.kestra.plugin.cloudquery;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
 import io.kestra.core.models.annotations.PluginProperty;
+import io.kestra.core.models.executions.metrics.Counter;
 import io.kestra.core.models.property.Property;
 import io.kestra.core.models.tasks.Task;
 import io.kestra.core.models.tasks.runners.TaskRunner;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.JacksonMapper;
+import io.kestra.core.utils.IdUtils;
+import io.kestra.plugin.core.runner.Process;
 import io.kestra.plugin.scripts.exec.scripts.models.DockerOptions;
+import io.kestra.plugin.scripts.exec.scripts.models.ScriptOutput;
+import io.kestra.plugin.scripts.exec.scripts.runners.CommandsWrapper;
 import io.kestra.plugin.scripts.runner.docker.Docker;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.Valid;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
 
-import java.util.Collections;
-import java.util.Map;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.*;
 
 @SuperBuilder
 @ToString
@@ -21,6 +37,9 @@ import java.util.Map;
 @NoArgsConstructor
 abstract class AbstractCloudQueryCommand extends Task {
     protected static final String DEFAULT_IMAGE = "ghcr.io/cloudquery/cloudquery:latest";
+    protected static final String CLOUDQUERY_BINARY = "/app/cloudquery";
+    private static final int DEFAULT_OUTPUT_FILES_CONCURRENCY = 8;
+    protected static final ObjectMapper OBJECT_MAPPER = JacksonMapper.ofYaml();
 
     @Schema(
         title = "Additional environment variables for the CloudQuery process."
@@ -52,6 +71,263 @@ abstract class AbstractCloudQueryCommand extends Task {
     @Builder.Default
     private Property<String> containerImage = Property.of(DEFAULT_IMAGE);
 
+    @Schema(
+        title = "The path of a CloudQuery CLI installed on the worker.",
+        description = "When set, CloudQuery runs as a plain process on the worker with the `Process` task runner, " +
+            "without the container creation and image checks of the Docker task runner. `taskRunner`, `containerImage` and `docker` are then ignored. " +
+            "Use `cloudquery` to run the CLI found in the `PATH` of the worker."
+    )
+    private Property<String> binary;
+
+    @Schema(
+        title = "The version of the CloudQuery CLI to run as a plain process on the worker when `binary` is not set, e.g. `v6.8.0`.",
+        description = "The CLI is downloaded once from the CloudQuery GitHub releases for the OS and architecture of the worker, " +
+            "verified against the checksums of the release, and cached in `binaryCacheDirectory`. The task fails if the release publishes no checksum for the binary. " +
+            "Like `binary`, it runs with the `Process` task runner."
+    )
+    private Property<String> binaryVersion;
+
+    @Schema(
+        title = "The directory where the CloudQuery CLIs downloaded for `binaryVersion` are cached.",
+        description = "Defaults to a directory inside the worker temporary directory."
+    )
+    private Property<String> binaryCacheDirectory;
+
+    @Schema(
+        title = "Whether to cache CloudQuery plugins on the worker.",
+        description = "Plugins downloaded by CloudQuery are kept in a cache keyed by plugin path and version, and restored before the next runs " +
+            "so they don't need to be downloaded again. Only works with task runners using a local working directory (e.g. Docker or Process). " +
+            "Plugins downloaded when running on the worker with `binary` or `binaryVersion` are also keyed by the OS and architecture of the worker, " +
+            "the ones downloaded in containers are kept apart. " +
+            "`CloudQueryCLI` only restores the plugins referenced by its YAML `inputFiles`."
+    )
+    @Builder.Default
+    private Property<Boolean> pluginCache = Property.of(false);
+
+    @Schema(
+        title = "The directory of the plugin cache.",
+        description = "Defaults to a directory inside the worker temporary directory. It can be a volume shared by several workers."
+    )
+    private Property<String> pluginCacheDirectory;
+
+    @Schema(
+        title = "Maximum size in bytes of the plugin cache.",
+        description = "The least recently used plugins are evicted when the cache grows above this size."
+    )
+    @Builder.Default
+    private Property<Long> pluginCacheSize = Property.of(10L * 1024 * 1024 * 1024);
+
+    @Schema(
+        title = "Plugins to read from Kestra internal storage instead of the CloudQuery registries.",
+        description = """
+            A map of `<path>@<version>` (e.g. `cloudquery/aws@v22.14.0`) to the internal storage URI of the plugin binary, or of the zip archive published on the CloudQuery hub.
+            The binary must match the OS and architecture of the task runner.
+            Each plugin is extracted to `cloudquery-plugins/<path>/<version>/plugin` in the working directory.
+            The `Sync` task rewrites its configurations to use these local copies, with `CloudQueryCLI` use `registry: local` and this path in your configurations."""
+    )
+    private Property<Map<String, String>> pluginMirror;
+
+    @Schema(
+        title = "The number of output files uploaded at the same time.",
+        description = "When set, output files are uploaded to internal storage by the task with this many threads instead of one by one by the task runner. " +
+            "Only works with task runners using a local working directory (e.g. Docker or Process)."
+    )
+    private Property<Integer> outputFilesConcurrency;
+
+    @Schema(
+        title = "Whether to compress output files with gzip while uploading them.",
+        description = "Compressed files are exposed with a `.gz` suffix added to their name. Implies the task uploads the output files, see `outputFilesConcurrency`."
+    )
+    @Builder.Default
+    private Property<Boolean> compressOutputFiles = Property.of(false);
+
+    /**
+     * The CloudQuery CLI to run as a plain process on the worker, downloading it if needed.
+     *
+     * @return the path of the CLI, or {@code null} to run CloudQuery in the container of the task runner
+     */
+    protected String nativeBinary(RunContext runContext) throws Exception {
+        Optional<String> path = runContext.render(this.binary).as(String.class);
+        if (path.isPresent()) {
+            return path.get();
+        }
+
+        Optional<String> version = runContext.render(this.binaryVersion).as(String.class);
+        if (version.isEmpty()) {
+            return null;
+        }
+
+        return new CloudQueryBinary(
+            runContext.render(this.binaryCacheDirectory).as(String.class).map(Path::of).orElse(CloudQueryBinary.DEFAULT_DIRECTORY),
+            runContext.logger()
+        ).provision(version.get()).toString();
+    }
+
+    /**
+     * The task runner running {@code nativeBinary}, or {@link #taskRunner} when running in a container.
+     */
+    protected TaskRunner<?> taskRunner(String nativeBinary) {
+        if (nativeBinary == null) {
+            return this.taskRunner;
+        }
+
+        return Process.builder()
+            .type(Process.class.getName())
+            .build();
+    }
+
+    /**
+     * The arguments running CloudQuery with {@code args}: the image entrypoint already is the CLI, a native process
+     * needs the binary first.
+     */
+    protected static List<String> cloudqueryCommand(String nativeBinary, List<String> args) {
+        if (nativeBinary == null) {
+            return args;
+        }
+
+        List<String> command = new ArrayList<>(args.size() + 1);
+        command.add(nativeBinary);
+        command.addAll(args);
+        return command;
+    }
+
+    protected boolean isPluginCacheEnabled(RunContext runContext) throws IllegalVariableEvaluationException {
+        return runContext.render(this.pluginCache).as(Boolean.class).orElse(false);
+    }
+
+    protected PluginCache pluginCache(RunContext runContext) throws IllegalVariableEvaluationException {
+        if (!this.isPluginCacheEnabled(runContext)) {
+            return null;
+        }
+
+        // plugins are binaries for the platform running CloudQuery, a cache directory can be shared by different workers
+        boolean nativeRun = runContext.render(this.binary).as(String.class).isPresent() || runContext.render(this.binaryVersion).as(String.class).isPresent();
+        String platform = nativeRun ?
+            CloudQueryBinary.platform(System.getProperty("os.name"), System.getProperty("os.arch")) :
+            PluginCache.CONTAINER_PLATFORM;
+
+        return new PluginCache(
+            runContext.render(this.pluginCacheDirectory).as(String.class).map(Path::of).orElse(PluginCache.DEFAULT_DIRECTORY).resolve(platform),
+            runContext.render(this.pluginCacheSize).as(Long.class).orElseThrow(),
+            runContext.logger()
+        );
+    }
+
+    /**
+     * Run the commands, restoring cached plugins before and caching newly downloaded ones after.
+     *
+     * @param plugins the plugins to restore, the ones not downloaded by CloudQuery are ignored
+     */
+    protected ScriptOutput runWithPluginCache(RunContext runContext, CommandsWrapper commands, Collection<PluginReference> plugins) throws Exception {
+        return this.runWithPluginCache(runContext, commands, plugins, PluginCache.DEFAULT_CQ_DIRECTORY);
+    }
+
+    /**
+     * Run the commands, restoring cached plugins before and caching newly downloaded ones after, when the commands
+     * succeeded.
+     *
+     * @param plugins the plugins to restore, the ones not downloaded by CloudQuery are ignored
+     * @param cqDirectory the CloudQuery directory used by the commands, relative to the working directory
+     */
+    protected ScriptOutput runWithPluginCache(RunContext runContext, CommandsWrapper commands, Collection<PluginReference> plugins, String cqDirectory) throws Exception {
+        PluginCache cache = this.pluginCache(runContext);
+        if (cache == null) {
+            return commands.run();
+        }
+
+        Path pluginsDirectory = commands.getWorkingDirectory().resolve(cqDirectory).resolve("plugins");
+        int hits = cache.restore(pluginsDirectory, plugins.stream().filter(PluginReference::isDownloaded).toList());
+        Metrics.emit(runContext, Counter.of("plugins.cache.hits", hits));
+
+        // a failing run throws, and a failed or interrupted download must not be cached as a valid plugin
+        ScriptOutput output = commands.run();
+        if (output.getExitCode() == 0) {
+            Metrics.emit(runContext, Counter.of("plugins.cache.stored.bytes", cache.store(pluginsDirectory)));
+        }
+        return output;
+    }
+
+    /**
+     * Whether output files are uploaded by the task rather than by the task runner.
+     */
+    protected boolean isTaskUploadingOutputFiles(RunContext runContext) throws IllegalVariableEvaluationException {
+        return runContext.render(this.outputFilesConcurrency).as(Integer.class).isPresent() ||
+            runContext.render(this.compressOutputFiles).as(Boolean.class).orElse(false);
+    }
+
+    /**
+     * Create the uploader of the output files from {@link #outputFilesConcurrency} and {@link #compressOutputFiles}.
+     */
+    protected OutputFilesUploader outputFilesUploader(RunContext runContext) throws IllegalVariableEvaluationException {
+        return new OutputFilesUploader(
+            runContext,
+            runContext.render(this.outputFilesConcurrency).as(Integer.class).orElse(DEFAULT_OUTPUT_FILES_CONCURRENCY),
+            runContext.render(this.compressOutputFiles).as(Boolean.class).orElse(false)
+        );
+    }
+
+    /**
+     * Upload the output files matching {@code outputFiles} in parallel.
+     *
+     * @return a copy of {@code output} with the uploaded files added to its output files
+     */
+    protected static ScriptOutput uploadOutputFiles(OutputFilesUploader uploader, ScriptOutput output, Path workingDirectory, List<String> outputFiles) throws Exception {
+        ScriptOutput result = SyncShards.merge(List.of(output));
+        result.getOutputFiles().putAll(uploader.upload(workingDirectory, outputFiles));
+        return result;
+    }
+
+    /**
+     * Extract the plugins of {@link #pluginMirror} into the working directory.
+     *
+     * @return the path of each plugin binary relative to the working directory, by {@link PluginMirror#key(PluginReference)}
+     */
+    protected Map<String, String> materializePluginMirror(RunContext runContext, Path workingDirectory) throws Exception {
+        Map<String, String> archives = runContext.render(this.pluginMirror).asMap(String.class, String.class);
+        if (archives.isEmpty()) {
+            return Map.of();
+        }
+
+        return PluginMirror.materialize(runContext, workingDirectory, archives);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<Map<String, Object>> readConfigs(RunContext runContext, List<Object> configurations) throws IllegalVariableEvaluationException, URISyntaxException, IOException {
+        List<Map<String, Object>> results = new ArrayList<>(configurations.size());
+        for (Object config : configurations) {
+            Map<String, Object> result;
+            if (config instanceof String) {
+                URI from = new URI(runContext.render((String) config));
+                try (BufferedReader inputStream = new BufferedReader(new InputStreamReader(runContext.storage().getFile(from)))) {
+                    result = OBJECT_MAPPER.readValue(inputStream, new TypeReference<>() {
+                    });
+                }
+            } else if (config instanceof Map) {
+                result = new HashMap<>((Map<String, Object>) config);
+            } else {
+                throw new IllegalVariableEvaluationException("Invalid configs type '" + config.getClass() + "'");
+            }
+
+            results.add(result);
+        }
+
+        return results;
+    }
+
+    /**
+     * Write each configuration to its own file in the working directory and return the file names.
+     */
+    protected List<String> writeConfigs(Path workingDirectory, List<Map<String, Object>> configs) throws IOException {
+        List<String> files = new ArrayList<>(configs.size());
+        for (Map<String, Object> config : configs) {
+            File confFile = new File(workingDirectory + "/" + IdUtils.create() + ".yml");
+            OBJECT_MAPPER.writeValue(confFile, config);
+            files.add(confFile.getName());
+        }
+
+        return files;
+    }
+
     protected DockerOptions injectDefaults(DockerOptions original) {
         if (original == null) {
             return null;
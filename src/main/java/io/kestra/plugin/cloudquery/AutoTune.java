@@ -0,0 +1,171 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.serializers.JacksonMapper;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Derives CloudQuery settings from the CPU and memory available to a sync.
+ * <p>
+ * Plugins validate their spec strictly, so settings are only injected in the plugins known to support them, and never
+ * override a value set by the user.
+ */
+class AutoTune {
+    private static final long MIB = 1024 * 1024;
+    private static final long MIN_CONCURRENCY = 100;
+    private static final long CONCURRENCY_PER_CPU = 1000;
+    private static final long MIN_BATCH_SIZE_BYTES = MIB;
+    private static final long MAX_BATCH_SIZE_BYTES = 100 * MIB;
+    // rough average size of a row, used to derive the number of rows of a batch from its size in bytes
+    private static final long ROW_SIZE = 1024;
+
+    private static final Map<String, String> SOURCE_CONCURRENCY_KEYS = Map.of(
+        "cloudquery/aws", "concurrency",
+        "cloudquery/azure", "concurrency",
+        "cloudquery/gcp", "concurrency",
+        "cloudquery/github", "concurrency",
+        "cloudquery/k8s", "concurrency",
+        "cloudquery/hackernews", "item_concurrency"
+    );
+
+    private static final Set<String> BATCHING_DESTINATIONS = Set.of(
+        "cloudquery/bigquery",
+        "cloudquery/clickhouse",
+        "cloudquery/duckdb",
+        "cloudquery/file",
+        "cloudquery/gcs",
+        "cloudquery/postgresql",
+        "cloudquery/s3",
+        "cloudquery/snowflake",
+        "cloudquery/sqlite"
+    );
+
+    private final double cpus;
+    private final long memory;
+
+    AutoTune(double cpus, long memory) {
+        this.cpus = cpus;
+        this.memory = memory;
+    }
+
+    /**
+     * Read the limits from the task runner (or the deprecated docker options) when it defines them, otherwise use the
+     * resources of the worker, on which the process runs.
+     */
+    @SuppressWarnings("unchecked")
+    static AutoTune of(Object taskRunner, Object dockerOptions) {
+        Double cpus = null;
+        Long memory = null;
+
+        for (Object options : new Object[]{dockerOptions, taskRunner}) {
+            if (options == null) {
+                continue;
+            }
+
+            Map<String, Object> map = JacksonMapper.toMap(options);
+            if (cpus == null && map.get("cpu") instanceof Map<?, ?> cpu && cpu.get("cpus") != null) {
+                cpus = Double.parseDouble(cpu.get("cpus").toString());
+            }
+            if (memory == null && map.get("memory") instanceof Map<?, ?> mem && mem.get("memory") != null) {
+                memory = parseBytes(mem.get("memory").toString());
+            }
+        }
+
+        if (cpus == null) {
+            cpus = (double) Runtime.getRuntime().availableProcessors();
+        }
+        if (memory == null) {
+            memory = ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getTotalMemorySize();
+        }
+
+        return new AutoTune(cpus, memory);
+    }
+
+    /**
+     * The share of the resources of one of {@code processes} CloudQuery processes running at the same time.
+     */
+    AutoTune divide(int processes) {
+        return new AutoTune(this.cpus / Math.max(processes, 1), this.memory / Math.max(processes, 1));
+    }
+
+    /**
+     * Set the source concurrency and the destination batch sizes not set by the user.
+     */
+    @SuppressWarnings("unchecked")
+    List<Map<String, Object>> apply(List<Map<String, Object>> configs) {
+        long destinations = configs.stream().filter(config -> Objects.equals(config.get("kind"), "destination")).count();
+        long batchSizeBytes = Math.clamp(this.memory / 16 / Math.max(destinations, 1), MIN_BATCH_SIZE_BYTES, MAX_BATCH_SIZE_BYTES);
+        long concurrency = Math.max(MIN_CONCURRENCY, Math.min((long) (this.cpus * CONCURRENCY_PER_CPU), this.memory / MIB));
+
+        return configs.stream()
+            .map(config -> {
+                if (!(config.get("spec") instanceof Map<?, ?> spec) || !(spec.get("path") instanceof String path)) {
+                    return config;
+                }
+
+                Map<String, Object> defaults = new HashMap<>();
+                if (Objects.equals(config.get("kind"), "source") && SOURCE_CONCURRENCY_KEYS.containsKey(path)) {
+                    defaults.put(SOURCE_CONCURRENCY_KEYS.get(path), concurrency);
+                } else if (Objects.equals(config.get("kind"), "destination") && BATCHING_DESTINATIONS.contains(path)) {
+                    defaults.put("batch_size", batchSizeBytes / ROW_SIZE);
+                    defaults.put("batch_size_bytes", batchSizeBytes);
+                }
+
+                if (defaults.isEmpty()) {
+                    return config;
+                }
+
+                Map<String, Object> pluginSpec = spec.get("spec") instanceof Map<?, ?> map ? new HashMap<>((Map<String, Object>) map) : new HashMap<>();
+                defaults.forEach(pluginSpec::putIfAbsent);
+
+                Map<String, Object> tunedSpec = new HashMap<>((Map<String, Object>) spec);
+                tunedSpec.put("spec", pluginSpec);
+                Map<String, Object> tuned = new HashMap<>(config);
+                tuned.put("spec", tunedSpec);
+                return tuned;
+            })
+            .toList();
+    }
+
+    /**
+     * Go runtime settings matching the resources, so plugins neither oversubscribe the CPUs nor get killed by the
+     * memory limit before the garbage collector kicks in.
+     */
+    Map<String, String> env() {
+        return Map.of(
+            "GOMAXPROCS", String.valueOf(Math.max(1, (long) Math.ceil(this.cpus))),
+            "GOMEMLIMIT", (this.memory * 9 / 10 / MIB) + "MiB"
+        );
+    }
+
+    /**
+     * @return the key of the concurrency in the spec of the source plugin, or {@code null} if the plugin is not known
+     */
+    static String concurrencyKey(String path) {
+        return SOURCE_CONCURRENCY_KEYS.get(path);
+    }
+
+    static long parseBytes(String value) {
+        String normalized = value.trim().toLowerCase(Locale.ROOT).replaceAll("i?b$", "");
+        if (normalized.isEmpty()) {
+            throw new IllegalArgumentException("Invalid memory value '" + value + "'");
+        }
+
+        long multiplier = switch (normalized.charAt(normalized.length() - 1)) {
+            case 'k' -> 1024L;
+            case 'm' -> MIB;
+            case 'g' -> 1024 * MIB;
+            case 't' -> 1024 * 1024 * MIB;
+            default -> 1L;
+        };
+
+        String number = multiplier == 1L ? normalized : normalized.substring(0, normalized.length() - 1);
+        return (long) (Double.parseDouble(number.trim()) * multiplier);
+    }
+}
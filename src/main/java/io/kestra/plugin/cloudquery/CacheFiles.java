@@ -0,0 +1,114 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.utils.IdUtils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Writes the entries of the worker-level caches, shared by the tasks running concurrently on the worker.
+ * <p>
+ * An entry is copied to a temporary path of the cache directory outside the lock, so that concurrent tasks don't wait
+ * for each other's copies, then moved in place atomically while holding {@link #LOCK}. Restores, evictions and moves all
+ * hold the lock, so a restore never sees a partial entry and an entry is never evicted while it is being restored.
+ */
+class CacheFiles {
+    static final Object LOCK = new Object();
+
+    /**
+     * Prefix of the temporary copies, to be skipped when listing the entries of a cache.
+     */
+    static final String TEMP_PREFIX = ".tmp-";
+
+    private CacheFiles() {
+    }
+
+    /**
+     * Copy {@code source}, a file or a directory, to the cache entry {@code entry} through a temporary copy in {@code directory}.
+     *
+     * @param replace whether to replace an existing entry, otherwise the copy is dropped when the entry exists
+     * @param prepare called with the temporary copy before it is moved in place, or {@code null}
+     * @param stored called with the entry while still holding the lock once it is moved in place, e.g. to evict other entries
+     * @return whether the entry was moved in place
+     */
+    static boolean store(Path directory, Path source, Path entry, boolean replace, PathAction prepare, PathAction stored) throws IOException {
+        Files.createDirectories(directory);
+        Path temp = directory.resolve(TEMP_PREFIX + IdUtils.create());
+        copy(source, temp);
+        if (prepare != null) {
+            prepare.apply(temp);
+        }
+
+        synchronized (LOCK) {
+            Files.createDirectories(entry.getParent());
+            try {
+                if (replace) {
+                    Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                // stored by another task in the meantime
+                delete(temp);
+                return false;
+            }
+
+            if (stored != null) {
+                stored.apply(entry);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Copy {@code source}, a file or a directory, to {@code target}, replacing the files that exist.
+     */
+    static void copy(Path source, Path target) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(source)) {
+            paths = walk.toList();
+        }
+
+        for (Path path : paths) {
+            Path destination = target.resolve(source.relativize(path).toString());
+            if (Files.isDirectory(path)) {
+                Files.createDirectories(destination);
+            } else {
+                Files.copy(path, destination, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Delete {@code path}, a file or a directory.
+     */
+    static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(path)) {
+            paths = new ArrayList<>(walk.toList());
+        }
+
+        paths.sort(Comparator.reverseOrder());
+        for (Path p : paths) {
+            Files.deleteIfExists(p);
+        }
+    }
+
+    @FunctionalInterface
+    interface PathAction {
+        void apply(Path path) throws IOException;
+    }
+}
@@ -0,0 +1,140 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.utils.IdUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Worker-level cache of CloudQuery CLI binaries, to run CloudQuery as a plain process without a container.
+ * <p>
+ * Each version is downloaded once from the CloudQuery GitHub releases for the OS and architecture of the worker, verified
+ * against the {@code checksums.txt} of the release, and kept in {@code <directory>/<version>/}. A release without
+ * checksum for the binary is rejected.
+ */
+class CloudQueryBinary {
+    static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("java.io.tmpdir"), "kestra-cloudquery", "cli");
+
+    private static final String RELEASES = "https://github.com/cloudquery/cloudquery/releases/download/cli-";
+
+    private final Path directory;
+    private final Logger logger;
+
+    CloudQueryBinary(Path directory, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    /**
+     * Return the cached CLI of {@code version}, downloading it first if needed.
+     *
+     * @param version the CLI version, with or without the {@code v} prefix, e.g. {@code v6.8.0}
+     */
+    Path provision(String version) throws IOException, InterruptedException {
+        String normalized = version.startsWith("v") ? version : "v" + version;
+        String asset = asset(System.getProperty("os.name"), System.getProperty("os.arch"));
+        Path binary = this.directory.resolve(normalized).resolve(asset);
+        if (Files.isExecutable(binary)) {
+            return binary;
+        }
+
+        this.logger.info("Downloading CloudQuery CLI {} for {}", normalized, asset);
+        HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build();
+
+        // download outside the lock, then swap atomically so a concurrent run never sees a partial binary
+        Files.createDirectories(binary.getParent());
+        Path temp = binary.resolveSibling(".tmp-" + IdUtils.create());
+        try {
+            HttpResponse<Path> response = client.send(HttpRequest.newBuilder(URI.create(RELEASES + normalized + "/" + asset)).build(), HttpResponse.BodyHandlers.ofFile(temp));
+            if (response.statusCode() != 200) {
+                throw new IOException("Unable to download CloudQuery CLI " + normalized + " for " + asset + ", status code " + response.statusCode());
+            }
+
+            String expected = expectedChecksum(client, normalized, asset);
+            if (!expected.equals(Hashes.sha256(temp))) {
+                throw new IOException("Checksum mismatch for CloudQuery CLI " + normalized + " " + asset);
+            }
+
+            if (!temp.toFile().setExecutable(true)) {
+                throw new IOException("Unable to make CloudQuery CLI " + normalized + " executable");
+            }
+
+            synchronized (CloudQueryBinary.class) {
+                try {
+                    Files.move(temp, binary, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // provisioned by another run in the meantime
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        return binary;
+    }
+
+    /**
+     * The name of the release asset for an OS and architecture, as reported by the {@code os.name} and
+     * {@code os.arch} system properties.
+     */
+    static String asset(String osName, String osArch) {
+        String platform = platform(osName, osArch);
+        return "cloudquery_" + platform + (platform.startsWith("windows") ? ".exe" : "");
+    }
+
+    /**
+     * The platform of an OS and architecture in the notation of CloudQuery releases, e.g. {@code linux_amd64}.
+     */
+    static String platform(String osName, String osArch) {
+        String name = osName.toLowerCase(Locale.ROOT);
+        String os;
+        if (name.startsWith("linux")) {
+            os = "linux";
+        } else if (name.startsWith("mac") || name.startsWith("darwin")) {
+            os = "darwin";
+        } else if (name.startsWith("windows")) {
+            os = "windows";
+        } else {
+            throw new IllegalArgumentException("CloudQuery CLI is not available for OS '" + osName + "'");
+        }
+
+        String arch = switch (osArch.toLowerCase(Locale.ROOT)) {
+            case "amd64", "x86_64" -> "amd64";
+            case "aarch64", "arm64" -> "arm64";
+            default -> throw new IllegalArgumentException("CloudQuery CLI is not available for architecture '" + osArch + "'");
+        };
+
+        return os + "_" + arch;
+    }
+
+    private static String expectedChecksum(HttpClient client, String version, String asset) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(RELEASES + version + "/checksums.txt")).build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Unable to download the checksums of CloudQuery CLI " + version + ", status code " + response.statusCode());
+        }
+
+        return expectedChecksum(response.body(), asset)
+            .orElseThrow(() -> new IOException("No checksum published for CloudQuery CLI " + version + " " + asset));
+    }
+
+    /**
+     * The checksum of {@code asset} in the content of a {@code checksums.txt} file.
+     */
+    static Optional<String> expectedChecksum(String checksums, String asset) {
+        return checksums.lines()
+            .map(line -> line.trim().split("\\s+"))
+            .filter(parts -> parts.length == 2 && parts[1].equals(asset))
+            .map(parts -> parts[0].toLowerCase(Locale.ROOT))
+            .findFirst();
+    }
+}
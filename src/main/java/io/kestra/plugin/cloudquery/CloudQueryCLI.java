@@ -1,5 +1,7 @@
 package io.kestra.plugin.cloudquery;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
 import io.kestra.core.models.annotations.Example;
 import io.kestra.core.models.annotations.Plugin;
 import io.kestra.core.models.annotations.PluginProperty;
@@ -7,6 +9,7 @@ import io.kestra.core.models.property.Property;
 import io.kestra.core.models.tasks.*;
 import io.kestra.core.models.tasks.runners.ScriptService;
 import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.JacksonMapper;
 import io.kestra.plugin.scripts.exec.scripts.models.DockerOptions;
 import io.kestra.plugin.scripts.exec.scripts.models.RunnerType;
 import io.kestra.plugin.scripts.exec.scripts.models.ScriptOutput;
@@ -20,8 +23,14 @@ import lombok.experimental.SuperBuilder;
 
 import jakarta.validation.constraints.NotEmpty;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @SuperBuilder
 @ToString
@@ -29,7 +38,8 @@ import java.util.List;
 @Getter
 @NoArgsConstructor
 @Schema(
-    title = "Execute CloudQuery commands from a CLI."
+    title = "Execute CloudQuery commands from a CLI.",
+    description = "When CloudQuery runs with `--log-format json --log-console`, its logs are parsed as they are emitted to report per-table metrics (resources, errors and duration) and totals."
 )
 @Plugin(
     examples = {
@@ -94,23 +104,73 @@ public class CloudQueryCLI extends AbstractCloudQueryCommand implements Runnable
     @Override
     public ScriptOutput run(RunContext runContext) throws Exception {
         var renderedOutputFiles = runContext.render(this.outputFiles).asList(String.class);
+        String nativeBinary = this.nativeBinary(runContext);
         CommandsWrapper commands = new CommandsWrapper(runContext)
             .withWarningOnStdErr(true)
-            .withDockerOptions(injectDefaults(getDocker()))
-            .withTaskRunner(this.getTaskRunner())
+            .withDockerOptions(nativeBinary == null ? injectDefaults(getDocker()) : null)
+            .withTaskRunner(this.taskRunner(nativeBinary))
             .withContainerImage(runContext.render(this.getContainerImage()).as(String.class).orElseThrow())
             .withCommands(
                 ScriptService.scriptCommands(
                     List.of("/bin/sh", "-c"),
-                    List.of("alias cloudquery='/app/cloudquery'"),
+                    List.of("alias cloudquery='" + (nativeBinary == null ? CLOUDQUERY_BINARY : nativeBinary) + "'"),
                     this.commands
                 )
             )
             .withEnv(runContext.render(this.getEnv()).asMap(String.class, String.class).isEmpty() ? new HashMap<>() : runContext.render(this.getEnv()).asMap(String.class, String.class))
             .withInputFiles(inputFiles)
-            .withOutputFiles(renderedOutputFiles.isEmpty() ? null : renderedOutputFiles);
+            .withOutputFiles(renderedOutputFiles.isEmpty() || this.isTaskUploadingOutputFiles(runContext) ? null : renderedOutputFiles)
+            .withLogConsumer(new CloudQueryLogConsumer(runContext));
 
-        return commands.run();
+        materializePluginMirror(runContext, commands.getWorkingDirectory());
+
+        ScriptOutput output = this.runWithPluginCache(runContext, commands, this.referencedPlugins(runContext));
+        if (!renderedOutputFiles.isEmpty() && this.isTaskUploadingOutputFiles(runContext)) {
+            return uploadOutputFiles(this.outputFilesUploader(runContext), output, commands.getWorkingDirectory(), renderedOutputFiles);
+        }
+
+        return output;
+    }
+
+    /**
+     * The plugins referenced by the YAML files of {@link #inputFiles}, the configurations given to the CLI.
+     */
+    @SuppressWarnings("unchecked")
+    private List<PluginReference> referencedPlugins(RunContext runContext) throws Exception {
+        Map<String, String> files;
+        if (this.inputFiles instanceof String json) {
+            files = JacksonMapper.ofJson(false).readValue(runContext.render(json), new TypeReference<>() {});
+        } else if (this.inputFiles instanceof Map<?, ?> map) {
+            files = (Map<String, String>) map;
+        } else {
+            return List.of();
+        }
+
+        List<PluginReference> plugins = new ArrayList<>();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            if (!file.getKey().endsWith(".yml") && !file.getKey().endsWith(".yaml")) {
+                continue;
+            }
+
+            try {
+                plugins.addAll(PluginReference.ofYaml(content(runContext, file.getValue())));
+            } catch (IllegalVariableEvaluationException | IOException e) {
+                // the file is still given as is to the CLI, its plugins are just downloaded again
+                runContext.logger().debug("Unable to read the plugins referenced by '{}'", file.getKey(), e);
+            }
+        }
+
+        return plugins;
+    }
+
+    private static String content(RunContext runContext, String inputFile) throws IllegalVariableEvaluationException, IOException {
+        if (!inputFile.startsWith("kestra://")) {
+            return runContext.render(inputFile);
+        }
+
+        try (InputStream inputStream = runContext.storage().getFile(URI.create(inputFile))) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
     }
 
     @Override
@@ -0,0 +1,178 @@
+package io.kestra.plugin.cloudquery;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.executions.metrics.Timer;
+import io.kestra.core.models.tasks.runners.DefaultLogConsumer;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.JacksonMapper;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Log consumer for CloudQuery running with {@code --log-format json}.
+ * <p>
+ * Each line is parsed as it arrives: JSON log entries are logged as their message followed by their other fields, at
+ * their level mapped to the Kestra one, and counted as standard error from the warn level on. "table sync finished"
+ * entries emit per-table metrics. Other lines, including Kestra outputs, are handled as usual.
+ */
+class CloudQueryLogConsumer extends DefaultLogConsumer {
+    private static final ObjectMapper MAPPER = JacksonMapper.ofJson();
+    private static final Set<String> ERROR_LEVELS = Set.of("warn", "error", "fatal", "panic");
+    private static final Set<String> FORMATTED_FIELDS = Set.of("level", "time", "message");
+    private static final Set<String> FAILURE_LEVELS = Set.of("error", "fatal", "panic");
+    private static final String TABLE_SYNC_FINISHED = "table sync finished";
+    private static final String SOURCE_MODULE_SUFFIX = "-src";
+    private static final Pattern RATE_LIMIT = Pattern.compile("rate.?limit|throttl|too many requests|\\b429\\b", Pattern.CASE_INSENSITIVE);
+
+    private final RunContext runContext;
+    private final Map<String, Long> tableResources = new ConcurrentHashMap<>();
+    private final Map<String, Long> sourceResources = new ConcurrentHashMap<>();
+    private final Map<String, Long> sourceRateLimitWarnings = new ConcurrentHashMap<>();
+    private final Map<String, Sync.TableStatus> tableStatuses = new ConcurrentHashMap<>();
+    private final Map<String, String> tableSources = new ConcurrentHashMap<>();
+
+    CloudQueryLogConsumer(RunContext runContext) {
+        super(runContext);
+        this.runContext = runContext;
+    }
+
+    @Override
+    public void accept(String line, Boolean isStdErr) {
+        if (line == null || !line.startsWith("{")) {
+            super.accept(line, isStdErr);
+            return;
+        }
+
+        JsonNode entry;
+        try {
+            entry = MAPPER.readTree(line);
+        } catch (Exception e) {
+            super.accept(line, isStdErr);
+            return;
+        }
+
+        boolean error = ERROR_LEVELS.contains(entry.path("level").asText());
+        if (TABLE_SYNC_FINISHED.equals(entry.path("message").asText())) {
+            this.tableSyncFinished(entry);
+        } else if (error && source(entry) != null && RATE_LIMIT.matcher(entry.path("message").asText() + " " + entry.path("error").asText()).find()) {
+            this.sourceRateLimitWarnings.merge(source(entry), 1L, Long::sum);
+        }
+
+        if (FAILURE_LEVELS.contains(entry.path("level").asText()) && entry.hasNonNull("table")) {
+            this.tableStatus(entry, Sync.TableStatus.FAILED);
+        }
+
+        this.log(entry);
+        if (error) {
+            this.stdErrCount.incrementAndGet();
+        } else {
+            this.stdOutCount.incrementAndGet();
+        }
+    }
+
+    private void log(JsonNode entry) {
+        String message = message(entry);
+        switch (entry.path("level").asText()) {
+            case "trace", "debug" -> this.runContext.logger().debug(message);
+            case "warn" -> this.runContext.logger().warn(message);
+            case "error", "fatal", "panic" -> this.runContext.logger().error(message);
+            default -> this.runContext.logger().info(message);
+        }
+    }
+
+    /**
+     * The message of a log entry followed by its other fields, e.g.
+     * {@code table sync finished module=aws-src table=aws_s3_buckets resources=12}.
+     */
+    static String message(JsonNode entry) {
+        StringBuilder message = new StringBuilder(entry.path("message").asText());
+        entry.fields().forEachRemaining(field -> {
+            if (!FORMATTED_FIELDS.contains(field.getKey())) {
+                message.append(message.isEmpty() ? "" : " ")
+                    .append(field.getKey())
+                    .append('=')
+                    .append(field.getValue().isValueNode() ? field.getValue().asText() : field.getValue().toString());
+            }
+        });
+
+        return message.toString();
+    }
+
+    /**
+     * @return the number of resources synced by table so far, summed over the clients syncing the table
+     */
+    Map<String, Long> getTableResources() {
+        return Map.copyOf(this.tableResources);
+    }
+
+    /**
+     * @return the number of resources synced by source name
+     */
+    Map<String, Long> getSourceResources() {
+        return Map.copyOf(this.sourceResources);
+    }
+
+    /**
+     * @return the number of warnings and errors about rate limiting by source name
+     */
+    Map<String, Long> getSourceRateLimitWarnings() {
+        return Map.copyOf(this.sourceRateLimitWarnings);
+    }
+
+    /**
+     * @return the status of each table synced so far, a table failing for any of its clients being failed
+     */
+    Map<String, Sync.TableStatus> getTableStatuses() {
+        return Map.copyOf(this.tableStatuses);
+    }
+
+    /**
+     * @return the name of the source syncing each table, when known
+     */
+    Map<String, String> getTableSources() {
+        return Map.copyOf(this.tableSources);
+    }
+
+    private void tableStatus(JsonNode entry, Sync.TableStatus status) {
+        String table = entry.path("table").asText();
+        this.tableStatuses.merge(table, status, (previous, current) -> previous == Sync.TableStatus.FAILED ? previous : current);
+        if (source(entry) != null) {
+            this.tableSources.put(table, source(entry));
+        }
+    }
+
+    private static String source(JsonNode entry) {
+        String module = entry.path("module").asText();
+        return module.endsWith(SOURCE_MODULE_SUFFIX) ? module.substring(0, module.length() - SOURCE_MODULE_SUFFIX.length()) : null;
+    }
+
+    private void tableSyncFinished(JsonNode entry) {
+        String table = entry.path("table").asText(null);
+        if (table == null) {
+            return;
+        }
+
+        long resources = entry.path("resources").asLong();
+        long errors = entry.path("errors").asLong();
+        this.tableResources.merge(table, resources, Long::sum);
+        this.tableStatus(entry, errors > 0 ? Sync.TableStatus.FAILED : Sync.TableStatus.SUCCESS);
+        if (source(entry) != null) {
+            this.sourceResources.merge(source(entry), resources, Long::sum);
+        }
+
+        Metrics.emit(this.runContext, Counter.of("table.resources", resources, "table", table));
+        Metrics.emit(this.runContext, Counter.of("table.errors", errors, "table", table));
+        Metrics.emit(this.runContext, Counter.of("resources", resources));
+        Metrics.emit(this.runContext, Counter.of("errors", errors));
+
+        if (entry.has("duration_ms")) {
+            Metrics.emit(this.runContext, Timer.of("table.duration", Duration.ofMillis(entry.path("duration_ms").asLong()), "table", table));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.kestra.plugin.cloudquery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.JacksonMapper;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Adjusts the concurrency of each source from the statistics of its previous runs, kept in the state store.
+ * <p>
+ * The concurrency is halved when the previous run hit rate limits, and increased by a quarter otherwise, within the
+ * bounds set by the user.
+ */
+class ConcurrencyTuner {
+    static final String STATE_NAME = "CloudQueryStatistics";
+
+    private static final ObjectMapper MAPPER = JacksonMapper.ofJson();
+    private static final double RAMP_UP = 1.25;
+    private static final double BACK_OFF = 0.5;
+
+    private final RunContext runContext;
+    private final String taskRunValue;
+    private final long min;
+    private final long max;
+
+    ConcurrencyTuner(RunContext runContext, long min, long max) {
+        if (min > max) {
+            throw new IllegalArgumentException("'minConcurrency' (" + min + ") must not be greater than 'maxConcurrency' (" + max + ")");
+        }
+
+        this.runContext = runContext;
+        this.taskRunValue = TaskIdentity.of(runContext).taskRunValue();
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Set the concurrency of the sources known to support it: the one learned from the previous runs, otherwise the one
+     * of the configuration (or the lower bound when not set), kept within the bounds.
+     */
+    @SuppressWarnings("unchecked")
+    List<Map<String, Object>> apply(List<Map<String, Object>> configs) throws IOException {
+        List<Map<String, Object>> results = new ArrayList<>(configs.size());
+        for (Map<String, Object> config : configs) {
+            if (!Objects.equals(config.get("kind"), "source")
+                || !(config.get("spec") instanceof Map<?, ?> spec)
+                || !(spec.get("path") instanceof String path)
+                || AutoTune.concurrencyKey(path) == null
+                || !(spec.get("name") instanceof String name)) {
+                results.add(config);
+                continue;
+            }
+
+            String key = AutoTune.concurrencyKey(path);
+            Map<String, Object> pluginSpec = spec.get("spec") instanceof Map<?, ?> map ? new HashMap<>((Map<String, Object>) map) : new HashMap<>();
+
+            Statistics previous = this.read(name);
+            long concurrency;
+            if (previous != null) {
+                concurrency = previous.nextConcurrency();
+            } else if (pluginSpec.get(key) instanceof Number number) {
+                concurrency = number.longValue();
+            } else {
+                concurrency = this.min;
+            }
+            pluginSpec.put(key, Math.clamp(concurrency, this.min, this.max));
+
+            Map<String, Object> tunedSpec = new HashMap<>((Map<String, Object>) spec);
+            tunedSpec.put("spec", pluginSpec);
+            Map<String, Object> tuned = new HashMap<>(config);
+            tuned.put("spec", tunedSpec);
+            results.add(tuned);
+        }
+
+        return results;
+    }
+
+    /**
+     * Store the statistics of a run of {@code source}, synced with {@code concurrency}.
+     */
+    Statistics record(String source, long concurrency, long durationMs, long rows, long rateLimitWarnings) throws IOException {
+        long next = rateLimitWarnings > 0 ? (long) (concurrency * BACK_OFF) : (long) Math.ceil(concurrency * RAMP_UP);
+        Statistics statistics = new Statistics(
+            concurrency,
+            durationMs,
+            rows,
+            durationMs > 0 ? rows * 1000.0 / durationMs : 0,
+            rateLimitWarnings,
+            Math.clamp(next, this.min, this.max)
+        );
+
+        this.runContext.stateStore().putState(STATE_NAME, source, this.taskRunValue, MAPPER.writeValueAsBytes(statistics));
+        this.runContext.logger().info(
+            "Source '{}' synced {} rows in {}ms with a concurrency of {} and {} rate limit warnings, next concurrency: {}",
+            source, rows, durationMs, concurrency, rateLimitWarnings, statistics.nextConcurrency()
+        );
+
+        return statistics;
+    }
+
+    private Statistics read(String source) throws IOException {
+        try (InputStream input = this.runContext.stateStore().getState(STATE_NAME, source, this.taskRunValue)) {
+            return MAPPER.readValue(input, Statistics.class);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    record Statistics(long concurrency, long durationMs, long rows, double rowsPerSecond, long rateLimitWarnings, long nextConcurrency) {
+    }
+}
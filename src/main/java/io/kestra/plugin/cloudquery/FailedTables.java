@@ -0,0 +1,120 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.exceptions.ResourceExpiredException;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.storages.kv.KVMetadata;
+import io.kestra.core.storages.kv.KVStore;
+import io.kestra.core.storages.kv.KVValue;
+import io.kestra.core.storages.kv.KVValueAndMetadata;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Keeps the tables that failed in an execution, so that its next attempts only sync them again.
+ * <p>
+ * Tables are stored in the namespace KV Store by execution. The entry of an execution is deleted once all its tables
+ * synced, and otherwise expires after {@link #TTL}, so executions that are never retried don't leave entries behind.
+ */
+class FailedTables {
+    static final Duration TTL = Duration.ofDays(7);
+
+    private final KVStore kvStore;
+    private final String key;
+
+    FailedTables(RunContext runContext) {
+        TaskIdentity identity = TaskIdentity.of(runContext);
+
+        this.kvStore = identity.executionId() == null ? null : runContext.namespaceKv(identity.namespace());
+        this.key = "cloudquery_failed_" + identity.key(identity.executionId());
+    }
+
+    /**
+     * @return the failed tables of the previous attempt by source name, empty on the first attempt
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, List<String>> load() throws Exception {
+        if (this.kvStore == null) {
+            return Map.of();
+        }
+
+        Optional<KVValue> value;
+        try {
+            value = this.kvStore.getValue(this.key);
+        } catch (ResourceExpiredException e) {
+            return Map.of();
+        }
+        if (value.isEmpty() || !(value.get().value() instanceof Map<?, ?> tables)) {
+            return Map.of();
+        }
+
+        Map<String, List<String>> results = new HashMap<>();
+        ((Map<String, Object>) tables).forEach((source, list) -> results.put(source, ((List<Object>) list).stream().map(Object::toString).toList()));
+        return results;
+    }
+
+    void save(Map<String, List<String>> tables) throws IOException {
+        if (this.kvStore != null) {
+            this.kvStore.put(this.key, new KVValueAndMetadata(new KVMetadata(TTL), tables));
+        }
+    }
+
+    void clear() throws IOException {
+        if (this.kvStore != null) {
+            this.kvStore.delete(this.key);
+        }
+    }
+
+    /**
+     * Group the failed tables by the source syncing them.
+     */
+    static Map<String, List<String>> bySource(Map<String, Sync.TableStatus> statuses, Map<String, String> sources) {
+        Map<String, TreeSet<String>> results = new HashMap<>();
+        statuses.forEach((table, status) -> {
+            if (status == Sync.TableStatus.FAILED) {
+                results.computeIfAbsent(sources.getOrDefault(table, ""), k -> new TreeSet<>()).add(table);
+            }
+        });
+
+        Map<String, List<String>> lists = new HashMap<>();
+        results.forEach((source, tables) -> lists.put(source, new ArrayList<>(tables)));
+        return lists;
+    }
+
+    /**
+     * Restrict the sources to the failed tables, removing the sources without any failed table.
+     * <p>
+     * When the source of a failed table is unknown (the empty key), sources are kept untouched as they can't be
+     * restricted safely.
+     */
+    @SuppressWarnings("unchecked")
+    static List<Map<String, Object>> restrict(List<Map<String, Object>> configs, Map<String, List<String>> failed) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Map<String, Object> config : configs) {
+            if (!Objects.equals(config.get("kind"), "source") || !(config.get("spec") instanceof Map<?, ?> spec) || failed.containsKey("")) {
+                results.add(config);
+                continue;
+            }
+
+            List<String> tables = failed.get((String) spec.get("name"));
+            if (tables == null || tables.isEmpty()) {
+                continue;
+            }
+
+            Map<String, Object> restrictedSpec = new HashMap<>((Map<String, Object>) spec);
+            restrictedSpec.put("tables", tables);
+            Map<String, Object> restricted = new HashMap<>(config);
+            restricted.put("spec", restrictedSpec);
+            results.add(restricted);
+        }
+
+        return results;
+    }
+}
@@ -0,0 +1,98 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.serializers.JacksonMapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Instantiates the configurations of a sync for each parameter set of {@code fanOut}.
+ * <p>
+ * Only the {@code {{ fanOut.<key> }}} expressions are substituted, configurations are not rendered as a whole so that
+ * CloudQuery placeholders using the same syntax, such as {@code {{TABLE}}} in file destinations, are left untouched.
+ */
+class FanOut {
+    private static final Pattern EXPRESSION = Pattern.compile("\\{\\{\\s*fanOut((?:\\.[A-Za-z0-9_-]+)+)\\s*}}");
+
+    private FanOut() {
+    }
+
+    /**
+     * A typed copy of a parameter set, rendered as a raw map.
+     */
+    static Map<String, Object> parameterSet(Map<?, ?> rendered) {
+        Map<String, Object> parameterSet = new LinkedHashMap<>();
+        rendered.forEach((key, value) -> parameterSet.put(String.valueOf(key), value));
+        return parameterSet;
+    }
+
+    /**
+     * Substitute the {@code fanOut} expressions of {@code configs} with the values of {@code parameterSet}.
+     * <p>
+     * A string made of a single expression is replaced by the value itself, so that lists or numbers keep their type.
+     */
+    @SuppressWarnings("unchecked")
+    static List<Map<String, Object>> substitute(List<Map<String, Object>> configs, Map<String, Object> parameterSet) {
+        List<Map<String, Object>> results = new ArrayList<>(configs.size());
+        for (Map<String, Object> config : configs) {
+            results.add((Map<String, Object>) substitute((Object) config, parameterSet));
+        }
+
+        return results;
+    }
+
+    private static Object substitute(Object value, Map<?, ?> parameterSet) {
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> results = new LinkedHashMap<>();
+            map.forEach((key, item) -> results.put(key, substitute(item, parameterSet)));
+            return results;
+        }
+
+        if (value instanceof List<?> list) {
+            return list.stream().map(item -> substitute(item, parameterSet)).toList();
+        }
+
+        if (!(value instanceof String string) || !string.contains("fanOut")) {
+            return value;
+        }
+
+        Matcher whole = EXPRESSION.matcher(string);
+        if (whole.matches()) {
+            return resolve(parameterSet, whole.group(1));
+        }
+
+        Matcher matcher = EXPRESSION.matcher(string);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            matcher.appendReplacement(result, Matcher.quoteReplacement(String.valueOf(resolve(parameterSet, matcher.group(1)))));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    private static Object resolve(Map<?, ?> parameterSet, String path) {
+        Object current = parameterSet;
+        for (String key : path.substring(1).split("\\.")) {
+            if (!(current instanceof Map<?, ?> map) || !map.containsKey(key)) {
+                throw new IllegalArgumentException("Unknown fan-out parameter 'fanOut" + path + "' in parameter set " + parameterSet);
+            }
+            current = map.get(key);
+        }
+
+        return current;
+    }
+
+    /**
+     * An identifier of the parameter set, stable across executions whatever the position of the set in the list, as
+     * the incremental index of the set is stored under it.
+     */
+    static String id(Map<String, Object> parameterSet) throws Exception {
+        byte[] json = JacksonMapper.ofJson().writeValueAsBytes(new TreeMap<>(parameterSet));
+        return Hashes.sha256(json, 8);
+    }
+}
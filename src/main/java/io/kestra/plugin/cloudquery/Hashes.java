@@ -0,0 +1,64 @@
+package io.kestra.plugin.cloudquery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 hashes, as hexadecimal strings, used to fingerprint files and to build storage keys.
+ */
+class Hashes {
+    private Hashes() {
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String sha256(String value) {
+        return HexFormat.of().formatHex(sha256().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @param bytes the number of bytes of the hash to keep, for keys that must stay short
+     */
+    static String sha256(String value, int bytes) {
+        return sha256(value.getBytes(StandardCharsets.UTF_8), bytes);
+    }
+
+    /**
+     * @param bytes the number of bytes of the hash to keep, for keys that must stay short
+     */
+    static String sha256(byte[] value, int bytes) {
+        return HexFormat.of().formatHex(sha256().digest(value), 0, bytes);
+    }
+
+    /**
+     * Hash the content of {@code file}, reading it as a stream.
+     */
+    static String sha256(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        update(digest, file);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Add the content of {@code file} to {@code digest}, reading it as a stream.
+     */
+    static void update(MessageDigest digest, Path file) throws IOException {
+        try (InputStream input = new DigestInputStream(Files.newInputStream(file), digest)) {
+            input.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
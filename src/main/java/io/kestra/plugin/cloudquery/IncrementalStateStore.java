@@ -0,0 +1,242 @@
+package io.kestra.plugin.cloudquery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.JacksonMapper;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persists the incremental SQLite database in the Kestra state store.
+ * <p>
+ * The state store only accepts whole values, so the file is split into fixed-size chunks that are stored as separate
+ * states, plus a small manifest listing them. Reading and writing only ever hold one chunk in memory, whatever the size
+ * of the database.
+ * <p>
+ * Chunks are aligned on SQLite pages and named after the hash of their content: a sync only modifies a few pages, so
+ * only the chunks holding them are uploaded, the others are already in the state store.
+ * <p>
+ * Chunks are gzip compressed, the manifest records the compression used so states saved raw can still be restored.
+ * The manifest also holds a SHA-256 fingerprint of the database, so unchanged databases don't need to be uploaded again,
+ * and a worker-local {@link StateCache} holding the same fingerprint can be used instead of downloading the chunks.
+ * <p>
+ * Executions of the same task can run concurrently, each one reading the manifest the other is replacing. Chunks are
+ * therefore only removed one generation after they stopped being referenced, and a download missing a chunk anyway
+ * starts from an empty database rather than failing every later sync.
+ */
+class IncrementalStateStore {
+    static final String STATE_NAME = "CloudQueryState";
+    static final String DB_FILENAME = "icrementaldb.sqlite";
+    // a multiple of every possible SQLite page size (512 bytes to 64 KiB)
+    static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private static final ObjectMapper MAPPER = JacksonMapper.ofJson();
+    private static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String GZIP = "gzip";
+
+    private final RunContext runContext;
+    private final String taskRunValue;
+    private final int chunkSize;
+    private final StateCache cache;
+    private final String cacheKey;
+    private final String name;
+    private boolean incomplete;
+
+    IncrementalStateStore(RunContext runContext, String name, StateCache cache) {
+        this(runContext, name, cache, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param name the name of the database, each database of a task is stored separately
+     */
+    IncrementalStateStore(RunContext runContext, String name, StateCache cache, int chunkSize) {
+        this.runContext = runContext;
+        this.taskRunValue = TaskIdentity.of(runContext).taskRunValue();
+        this.chunkSize = chunkSize;
+        this.cache = cache;
+        this.name = name;
+        this.cacheKey = cache == null ? null : TaskIdentity.of(runContext).key(name);
+    }
+
+    /**
+     * Restore the database into {@code target}, creating an empty file if no state exists yet.
+     *
+     * @return the fingerprint of the restored database
+     */
+    String download(Path target) throws Exception {
+        Manifest manifest = this.manifest();
+
+        if (this.cache != null && manifest != null && manifest.getHash() != null && this.cache.restore(this.cacheKey, manifest.getHash(), target)) {
+            this.runContext.logger().debug("Incremental state restored from the worker cache");
+            return manifest.getHash();
+        }
+
+        MessageDigest digest = Hashes.sha256();
+
+        try (OutputStream output = new DigestOutputStream(Files.newOutputStream(target), digest)) {
+            if (manifest == null) {
+                // state saved before chunking was introduced, stored as a single value
+                try (InputStream legacy = this.runContext.stateStore().getState(STATE_NAME, this.name, this.taskRunValue)) {
+                    legacy.transferTo(output);
+                } catch (FileNotFoundException e) {
+                    // no state yet, start from an empty database
+                }
+
+                return HexFormat.of().formatHex(digest.digest());
+            }
+
+            for (String chunkHash : manifest.getChunks()) {
+                try (InputStream chunk = this.runContext.stateStore().getState(STATE_NAME, chunkName(this.name, chunkHash), this.taskRunValue);
+                     InputStream content = GZIP.equals(manifest.getCompression()) ? new GZIPInputStream(chunk) : chunk) {
+                    content.transferTo(output);
+                } catch (FileNotFoundException e) {
+                    this.incomplete = true;
+                    break;
+                }
+            }
+        }
+
+        if (this.incomplete) {
+            // the chunk was removed by an upload racing with this one, a full sync rebuilds the state
+            this.runContext.logger().warn("Incremental state chunk missing from the state store, starting from an empty state");
+            Files.write(target, new byte[0]);
+            return fingerprint(target);
+        }
+
+        String hash = HexFormat.of().formatHex(digest.digest());
+        if (this.cache != null) {
+            this.cache.store(this.cacheKey, hash, target);
+        }
+
+        return hash;
+    }
+
+    /**
+     * Store the database found at {@code source} and return the number of compressed bytes written, only counting the
+     * chunks that were not already stored.
+     */
+    long upload(Path source) throws Exception {
+        Manifest previous = this.manifest();
+        // chunks of an incomplete state can't be trusted to be stored, all of them are uploaded again
+        Set<String> stored = previous == null || this.incomplete ? new HashSet<>() : new HashSet<>(previous.getChunks());
+
+        MessageDigest digest = Hashes.sha256();
+        byte[] buffer = new byte[this.chunkSize];
+        List<String> chunks = new ArrayList<>();
+        long size = 0;
+        long compressedSize = 0;
+
+        try (InputStream input = Files.newInputStream(source)) {
+            int read;
+            while ((read = input.readNBytes(buffer, 0, buffer.length)) > 0) {
+                digest.update(buffer, 0, read);
+
+                MessageDigest chunkDigest = Hashes.sha256();
+                chunkDigest.update(buffer, 0, read);
+                String chunkHash = HexFormat.of().formatHex(chunkDigest.digest());
+
+                if (stored.add(chunkHash)) {
+                    byte[] compressed = compress(buffer, read);
+                    this.runContext.stateStore().putState(STATE_NAME, chunkName(this.name, chunkHash), this.taskRunValue, compressed);
+                    compressedSize += compressed.length;
+                }
+
+                chunks.add(chunkHash);
+                size += read;
+            }
+        }
+
+        String hash = HexFormat.of().formatHex(digest.digest());
+        Manifest manifest = Manifest.builder()
+            .chunks(chunks)
+            .size(size)
+            .compression(GZIP)
+            .hash(hash)
+            .previousChunks(previous == null ? List.of() : previous.getChunks())
+            .build();
+        this.runContext.stateStore().putState(STATE_NAME, this.name + MANIFEST_SUFFIX, this.taskRunValue, MAPPER.writeValueAsBytes(manifest));
+        this.incomplete = false;
+
+        // the new manifest is in place, chunks only referenced by the generation before the replaced one can be removed:
+        // an execution that read the replaced manifest may still be downloading its chunks
+        if (previous != null) {
+            Set<String> referenced = new HashSet<>(chunks);
+            referenced.addAll(previous.getChunks());
+            if (previous.getPreviousChunks() != null) {
+                for (String chunkHash : new HashSet<>(previous.getPreviousChunks())) {
+                    if (!referenced.contains(chunkHash)) {
+                        this.runContext.stateStore().deleteState(STATE_NAME, chunkName(this.name, chunkHash), this.taskRunValue);
+                    }
+                }
+            }
+        } else {
+            this.runContext.stateStore().deleteState(STATE_NAME, this.name, this.taskRunValue);
+        }
+
+        if (this.cache != null) {
+            this.cache.store(this.cacheKey, hash, source);
+        }
+
+        return compressedSize;
+    }
+
+    /**
+     * Compute the fingerprint of a database file, comparable with the one returned by {@link #download(Path)}.
+     */
+    static String fingerprint(Path file) throws IOException {
+        return Hashes.sha256(file);
+    }
+
+    private Manifest manifest() throws Exception {
+        try (InputStream input = this.runContext.stateStore().getState(STATE_NAME, this.name + MANIFEST_SUFFIX, this.taskRunValue)) {
+            return MAPPER.readValue(input, Manifest.class);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static byte[] compress(byte[] buffer, int length) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            gzip.write(buffer, 0, length);
+        }
+
+        return output.toByteArray();
+    }
+
+    static String chunkName(String name, String chunkHash) {
+        return name + "." + chunkHash;
+    }
+
+    @Getter
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Manifest {
+        private List<String> chunks;
+        private long size;
+        private String compression;
+        private String hash;
+        // chunks of the manifest this one replaced, kept until the next upload
+        private List<String> previousChunks;
+    }
+}
@@ -0,0 +1,102 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.runners.RunContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Stores each synced table in Kestra internal storage.
+ * <p>
+ * CloudQuery writes the rows with the bundled {@code file} destination to the working directory, one directory per
+ * table, straight in the requested format. Once CloudQuery exited, each file is streamed to internal storage and
+ * deleted from the working directory.
+ */
+class InternalStorageDestination {
+    static final String NAME = "kestra_internal_storage";
+
+    private InternalStorageDestination() {
+    }
+
+    /**
+     * Add the destination to the configurations, and to the destinations of every source.
+     *
+     * @param filePerTable whether to write each table to a single file instead of one file per batch
+     */
+    @SuppressWarnings("unchecked")
+    static void inject(List<Map<String, Object>> configs, String directory, Sync.InternalStorageFormat format, boolean filePerTable) {
+        for (int i = 0; i < configs.size(); i++) {
+            Map<String, Object> config = configs.get(i);
+            if (Objects.equals(config.get("kind"), "source") && config.get("spec") instanceof Map<?, ?> spec) {
+                List<Object> destinations = spec.get("destinations") instanceof List<?> list ? new ArrayList<>(list) : new ArrayList<>();
+                destinations.add(NAME);
+
+                Map<String, Object> updatedSpec = new HashMap<>((Map<String, Object>) spec);
+                updatedSpec.put("destinations", destinations);
+                Map<String, Object> updated = new HashMap<>(config);
+                updated.put("spec", updatedSpec);
+                configs.set(i, updated);
+            }
+        }
+
+        configs.add(new HashMap<>(Map.of(
+            "kind", "destination",
+            "spec", Map.of(
+                "name", NAME,
+                "path", "cloudquery/file",
+                "version", "v3.4.8",
+                "spec", Map.of(
+                    "path", directory + (filePerTable ? "/{{TABLE}}/{{TABLE}}.{{FORMAT}}" : "/{{TABLE}}/{{UUID}}.{{FORMAT}}"),
+                    "format", format.name().toLowerCase(),
+                    "no_rotate", filePerTable
+                )
+            )
+        )));
+    }
+
+    /**
+     * Upload the files written by the destination in {@code directory}.
+     *
+     * @param processName the name of the CloudQuery process that wrote them, {@code null} when the sync runs a single one
+     * @return the URIs of the files of each table
+     */
+    static Map<String, List<URI>> upload(RunContext runContext, Path directory, String processName) throws IOException {
+        Map<String, List<URI>> results = new TreeMap<>();
+        if (!Files.isDirectory(directory)) {
+            return results;
+        }
+
+        List<Path> tables;
+        try (Stream<Path> list = Files.list(directory)) {
+            tables = list.filter(Files::isDirectory).sorted().toList();
+        }
+
+        for (Path table : tables) {
+            List<Path> files;
+            try (Stream<Path> list = Files.list(table)) {
+                files = list.filter(Files::isRegularFile).sorted().toList();
+            }
+
+            List<URI> uris = new ArrayList<>();
+            for (Path file : files) {
+                // named after the process and the table, processes and tables writing files with the same name don't overwrite each other
+                String name = (processName == null ? "" : processName + "/") + table.getFileName() + "/" + file.getFileName();
+                uris.add(runContext.storage().putFile(file.toFile(), name));
+                // keep the disk usage of large syncs bounded to the files not uploaded yet
+                Files.deleteIfExists(file);
+            }
+            results.put(table.getFileName().toString(), uris);
+        }
+
+        return results;
+    }
+}
@@ -0,0 +1,186 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.storages.kv.KVStore;
+import io.kestra.core.storages.kv.KVValue;
+import io.kestra.core.storages.kv.KVValueAndMetadata;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Stores each CloudQuery cursor as its own entry of the namespace KV Store.
+ * <p>
+ * CloudQuery still reads and writes its cursors through the bundled SQLite destination: the database is seeded from the
+ * KV Store before the sync, and only the cursors that changed are written back afterward. Entries are independent, so
+ * a sync only touches the cursors of the tables it synced.
+ * <p>
+ * An index entry per task run and database lists the stored cursors along with the schema CloudQuery created the table
+ * with, so that the table is restored exactly as CloudQuery expects it. Until a first sync has created the table,
+ * nothing is restored and CloudQuery creates it itself.
+ */
+class KvCursorStore {
+    private static final String KEY_COLUMN = "key";
+
+    private final RunContext runContext;
+    private final String tableName;
+    private final KVStore kvStore;
+    private final String indexKey;
+
+    private final Map<String, Map<String, Object>> restored = new HashMap<>();
+    private String schema;
+
+    /**
+     * @param database the name of the SQLite database of the process, so that the processes of a sync keep separate cursors
+     */
+    KvCursorStore(RunContext runContext, String tableName, String database) {
+        this.runContext = runContext;
+        this.tableName = tableName;
+
+        TaskIdentity identity = TaskIdentity.of(runContext);
+        this.kvStore = runContext.namespaceKv(identity.namespace());
+        this.indexKey = "cloudquery_cursors_" + identity.key(tableName, database);
+    }
+
+    /**
+     * Create the SQLite database at {@code db} holding every cursor stored in the KV Store.
+     *
+     * @return the number of cursors restored
+     */
+    @SuppressWarnings("unchecked")
+    int restore(Path db) throws Exception {
+        Optional<KVValue> index = this.kvStore.getValue(this.indexKey);
+        if (index.isEmpty() || !(index.get().value() instanceof Map<?, ?> map) || map.get("schema") == null) {
+            return 0;
+        }
+
+        this.schema = (String) map.get("schema");
+        List<?> cursorKeys = map.get("keys") instanceof List<?> keys ? keys : List.of();
+        for (Object cursorKey : cursorKeys) {
+            Optional<KVValue> value = this.kvStore.getValue(this.kvKey((String) cursorKey));
+            if (value.isPresent() && value.get().value() instanceof Map<?, ?> row) {
+                this.restored.put((String) cursorKey, normalize((Map<String, Object>) row));
+            }
+        }
+
+        try (Connection connection = connection(db)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(this.schema);
+            }
+
+            for (Map<String, Object> row : this.restored.values()) {
+                List<String> columns = new ArrayList<>(row.keySet());
+                String sql = "INSERT OR REPLACE INTO \"" + this.tableName + "\" (" +
+                    columns.stream().map(column -> "\"" + column + "\"").collect(Collectors.joining(", ")) +
+                    ") VALUES (" + columns.stream().map(column -> "?").collect(Collectors.joining(", ")) + ")";
+
+                try (PreparedStatement insert = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < columns.size(); i++) {
+                        insert.setObject(i + 1, row.get(columns.get(i)));
+                    }
+                    insert.executeUpdate();
+                }
+            }
+        }
+
+        return this.restored.size();
+    }
+
+    /**
+     * Write back to the KV Store the cursors of {@code db} that changed since {@link #restore(Path)} or the previous call.
+     *
+     * @return the number of cursors written or deleted
+     */
+    synchronized int persist(Path db) throws Exception {
+        String currentSchema;
+        Map<String, Map<String, Object>> current = new HashMap<>();
+        try (Connection connection = connection(db)) {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT \"sql\" FROM \"sqlite_master\" WHERE \"type\" = 'table' AND \"name\" = ?")) {
+                statement.setString(1, this.tableName);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next()) {
+                        // CloudQuery stopped before creating the table
+                        return 0;
+                    }
+                    currentSchema = resultSet.getString(1);
+                }
+            }
+
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT * FROM \"" + this.tableName + "\"")) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                while (resultSet.next()) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                        row.put(metaData.getColumnName(i), resultSet.getObject(i));
+                    }
+                    current.put((String) row.get(KEY_COLUMN), normalize(row));
+                }
+            }
+        }
+
+        int updated = 0;
+        for (Map.Entry<String, Map<String, Object>> cursor : current.entrySet()) {
+            if (!Objects.equals(this.restored.get(cursor.getKey()), cursor.getValue())) {
+                this.kvStore.put(this.kvKey(cursor.getKey()), new KVValueAndMetadata(null, cursor.getValue()));
+                updated++;
+            }
+        }
+
+        // the index is written once the cursors it lists exist, and before the cursors it no longer lists are deleted
+        if (!currentSchema.equals(this.schema) || !current.keySet().equals(this.restored.keySet())) {
+            this.kvStore.put(this.indexKey, new KVValueAndMetadata(null, Map.of(
+                "schema", currentSchema,
+                "keys", current.keySet().stream().sorted().toList()
+            )));
+        }
+
+        for (String key : this.restored.keySet()) {
+            if (!current.containsKey(key)) {
+                this.kvStore.delete(this.kvKey(key));
+                updated++;
+            }
+        }
+
+        this.schema = currentSchema;
+        this.restored.clear();
+        this.restored.putAll(current);
+
+        this.runContext.logger().debug("{} incremental cursor(s) updated in the KV Store", updated);
+
+        return updated;
+    }
+
+    private String kvKey(String cursorKey) {
+        // cursor keys can contain any character, KV keys can't
+        return this.indexKey + "_" + Hashes.sha256(cursorKey, 16);
+    }
+
+    /**
+     * SQLite and the KV Store don't return the same types for the same integer, compare them as longs.
+     */
+    private static Map<String, Object> normalize(Map<String, Object> row) {
+        Map<String, Object> normalized = new LinkedHashMap<>();
+        row.forEach((column, value) -> normalized.put(column, value instanceof Integer integer ? Long.valueOf(integer) : value));
+        return normalized;
+    }
+
+    private static Connection connection(Path db) throws Exception {
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + db.toAbsolutePath());
+        return dataSource.getConnection();
+    }
+}
@@ -0,0 +1,21 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.models.executions.AbstractMetricEntry;
+import io.kestra.core.runners.RunContext;
+
+/**
+ * Emits the metrics of a task.
+ * <p>
+ * The list of metrics of a {@link RunContext} isn't thread-safe, while the log consumers of concurrent CloudQuery
+ * processes, the checkpointer and the uploader all emit metrics, so every metric goes through this class.
+ */
+class Metrics {
+    private Metrics() {
+    }
+
+    static <T> void emit(RunContext runContext, AbstractMetricEntry<T> metric) {
+        synchronized (runContext) {
+            runContext.metric(metric);
+        }
+    }
+}
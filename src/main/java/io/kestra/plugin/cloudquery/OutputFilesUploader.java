@@ -0,0 +1,207 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.executions.metrics.Timer;
+import io.kestra.core.runners.RunContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Uploads the output files of a task to internal storage with several threads, optionally compressing them with gzip.
+ * <p>
+ * Files can also be uploaded while the task is still running with {@link #watch(Path, List, Duration)}: a file is
+ * uploaded once it didn't change between two polls. There is no way to know whether the writer closed it, so
+ * {@link #upload(Path, List)} uploads again the files that changed since, and the early upload is only kept when the
+ * file is unchanged at the end.
+ */
+class OutputFilesUploader implements AutoCloseable {
+    static final String GZIP_EXTENSION = ".gz";
+
+    private final RunContext runContext;
+    private final boolean compress;
+    private final ExecutorService executor;
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final Map<Path, FileVersion> observed = new ConcurrentHashMap<>();
+    private final Map<Path, Upload> streamed = new ConcurrentHashMap<>();
+    private ScheduledExecutorService watcher;
+
+    OutputFilesUploader(RunContext runContext, int concurrency, boolean compress) {
+        this.runContext = runContext;
+        this.compress = compress;
+        this.executor = Executors.newFixedThreadPool(Math.max(concurrency, 1));
+    }
+
+    /**
+     * Start uploading the files matching the glob {@code patterns} once they are unchanged for {@code interval}.
+     */
+    void watch(Path workingDirectory, List<String> patterns, Duration interval) {
+        this.watcher = Executors.newSingleThreadScheduledExecutor();
+        this.watcher.scheduleWithFixedDelay(() -> {
+            try {
+                for (Path file : list(workingDirectory, patterns)) {
+                    FileVersion version = FileVersion.of(file);
+                    FileVersion previous = this.observed.put(file, version);
+                    Upload upload = this.streamed.get(file);
+
+                    if (version.equals(previous) && (upload == null || !upload.version().equals(version))) {
+                        String name = this.name(workingDirectory, file);
+                        this.streamed.put(file, new Upload(version, this.executor.submit(() -> this.upload(file, name))));
+                    }
+                }
+            } catch (Exception e) {
+                // files are uploaded again at the end anyway
+                this.runContext.logger().debug("Unable to upload output files while the task is running", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Upload the files of {@code workingDirectory} matching any of the glob {@code patterns}, reusing the uploads done
+     * while watching for the files that didn't change since.
+     *
+     * @return the URI of each file by path relative to the working directory, with a {@code .gz} suffix when compressed
+     */
+    Map<String, URI> upload(Path workingDirectory, List<String> patterns) throws Exception {
+        Instant start = Instant.now();
+
+        try {
+            if (this.watcher != null) {
+                this.watcher.shutdown();
+                this.watcher.awaitTermination(1, TimeUnit.MINUTES);
+            }
+
+            Map<String, Path> files = new HashMap<>();
+            Map<String, Future<URI>> futures = new HashMap<>();
+            Set<String> reused = new HashSet<>();
+            for (Path file : list(workingDirectory, patterns)) {
+                String name = this.name(workingDirectory, file);
+                files.put(name, file);
+
+                Upload upload = this.streamed.get(file);
+                if (upload != null && upload.version().equals(FileVersion.of(file))) {
+                    futures.put(name, upload.uri());
+                    reused.add(name);
+                } else {
+                    futures.put(name, this.executor.submit(() -> this.upload(file, name)));
+                }
+            }
+
+            Map<String, URI> results = new HashMap<>();
+            for (Map.Entry<String, Future<URI>> future : futures.entrySet()) {
+                try {
+                    results.put(future.getKey(), future.getValue().get());
+                } catch (ExecutionException e) {
+                    if (!reused.remove(future.getKey())) {
+                        throw e.getCause() instanceof Exception cause ? cause : e;
+                    }
+
+                    // an early upload failed, the file is complete now so try again once
+                    results.put(future.getKey(), this.upload(files.get(future.getKey()), future.getKey()));
+                }
+            }
+
+            Metrics.emit(this.runContext, Counter.of("outputFiles.count", results.size()));
+            Metrics.emit(this.runContext, Counter.of("outputFiles.bytes", this.bytes.get()));
+            Metrics.emit(this.runContext, Timer.of("outputFiles.duration", Duration.between(start, Instant.now())));
+            if (this.watcher != null) {
+                Metrics.emit(this.runContext, Counter.of("outputFiles.streamed", reused.size()));
+            }
+
+            return results;
+        } finally {
+            this.close();
+        }
+    }
+
+    /**
+     * Stop watching and uploading, for tasks failing before {@link #upload(Path, List)}.
+     */
+    @Override
+    public void close() {
+        if (this.watcher != null) {
+            this.watcher.shutdownNow();
+        }
+        this.executor.shutdownNow();
+    }
+
+    private static List<Path> list(Path workingDirectory, List<String> patterns) throws IOException {
+        List<PathMatcher> matchers = patterns.stream()
+            .map(pattern -> FileSystems.getDefault().getPathMatcher("glob:" + pattern))
+            .toList();
+
+        try (Stream<Path> walk = Files.walk(workingDirectory)) {
+            return walk
+                .filter(Files::isRegularFile)
+                .filter(path -> matchers.stream().anyMatch(matcher -> matcher.matches(workingDirectory.relativize(path))))
+                .toList();
+        }
+    }
+
+    /**
+     * The name of the file in the results and in internal storage: its path relative to the working directory, so files
+     * with the same name in different directories don't overwrite each other.
+     */
+    private String name(Path workingDirectory, Path file) {
+        return workingDirectory.relativize(file).toString() + (this.compress ? GZIP_EXTENSION : "");
+    }
+
+    private URI upload(Path file, String name) throws IOException {
+        if (!this.compress && this.watcher == null) {
+            this.bytes.addAndGet(Files.size(file));
+            return this.runContext.storage().putFile(file.toFile(), name);
+        }
+
+        // while watching, the file may still be written to by the task, upload a copy and leave it in place
+        Path copy = Files.createTempFile(this.runContext.tempDir(), "output", file.getFileName() + (this.compress ? GZIP_EXTENSION : ""));
+        try {
+            if (this.compress) {
+                try (InputStream input = Files.newInputStream(file); OutputStream output = new GZIPOutputStream(Files.newOutputStream(copy))) {
+                    input.transferTo(output);
+                }
+            } else {
+                try (InputStream input = Files.newInputStream(file); OutputStream output = Files.newOutputStream(copy)) {
+                    input.transferTo(output);
+                }
+            }
+
+            this.bytes.addAndGet(Files.size(copy));
+            return this.runContext.storage().putFile(copy.toFile(), name);
+        } finally {
+            Files.deleteIfExists(copy);
+        }
+    }
+
+    private record FileVersion(long size, long lastModified) {
+        static FileVersion of(Path file) throws IOException {
+            return new FileVersion(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+        }
+    }
+
+    private record Upload(FileVersion version, Future<URI> uri) {
+    }
+}
@@ -0,0 +1,188 @@
+package io.kestra.plugin.cloudquery;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Worker-level cache of CloudQuery plugin binaries.
+ * <p>
+ * CloudQuery downloads plugins into {@code <cq-dir>/plugins/<kind>/<team>/<name>/<version>}, {@code .cq} relative to
+ * its working directory by default, and skips the download when the directory already exists. Cached entries use the same layout, they are
+ * restored into the working directory before the run and new plugins are collected back after it.
+ * <p>
+ * Each entry holds a checksum of its files, verified before every restore, and the cache evicts the least recently
+ * used entries above its size cap.
+ * <p>
+ * Plugins are binaries for a platform: tasks use a subdirectory of the configured directory per OS and architecture
+ * when running CloudQuery on the worker, and {@link #CONTAINER_PLATFORM} when running it in a container.
+ */
+class PluginCache {
+    static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("java.io.tmpdir"), "kestra-cloudquery", "plugins");
+    static final String DEFAULT_CQ_DIRECTORY = ".cq";
+    static final String CONTAINER_PLATFORM = "container";
+
+    private static final String CHECKSUM_FILE = ".kestra-checksum";
+
+    private final Path directory;
+    private final long maxSize;
+    private final Logger logger;
+
+    PluginCache(Path directory, long maxSize, Logger logger) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.logger = logger;
+    }
+
+    /**
+     * Restore cached plugins into {@code pluginsDirectory}, the {@code plugins} directory of the CloudQuery directory.
+     *
+     * @param plugins the plugins to restore
+     * @return the number of plugins restored
+     */
+    int restore(Path pluginsDirectory, Collection<PluginReference> plugins) throws IOException {
+        List<Path> entries = plugins.stream().map(plugin -> this.directory.resolve(plugin.relativePath())).filter(Files::isDirectory).toList();
+
+        int restored = 0;
+        for (Path entry : entries) {
+            Path target = pluginsDirectory.resolve(this.directory.relativize(entry));
+            if (Files.exists(target)) {
+                continue;
+            }
+
+            synchronized (CacheFiles.LOCK) {
+                if (!Files.isDirectory(entry)) {
+                    continue;
+                }
+
+                Path checksumFile = entry.resolve(CHECKSUM_FILE);
+                if (!Files.exists(checksumFile) || !Files.readString(checksumFile).equals(checksum(entry))) {
+                    this.logger.warn("Evicting corrupted CloudQuery plugin cache entry '{}'", this.directory.relativize(entry));
+                    CacheFiles.delete(entry);
+                    continue;
+                }
+
+                CacheFiles.copy(entry, target);
+                Files.delete(target.resolve(CHECKSUM_FILE));
+                Files.setLastModifiedTime(checksumFile, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+
+            restored++;
+        }
+
+        return restored;
+    }
+
+    /**
+     * Add to the cache every plugin downloaded into {@code plugins}, the {@code plugins} directory of the CloudQuery
+     * directory, that is not cached yet.
+     *
+     * @return the number of bytes added to the cache
+     */
+    long store(Path plugins) throws IOException {
+        if (!Files.isDirectory(plugins)) {
+            return 0;
+        }
+
+        List<Path> downloaded;
+        try (Stream<Path> paths = Files.find(plugins, PluginReference.DEPTH, (path, attributes) -> attributes.isDirectory() && plugins.relativize(path).getNameCount() == PluginReference.DEPTH)) {
+            downloaded = paths.toList();
+        }
+
+        long added = 0;
+        for (Path source : downloaded) {
+            Path entry = this.directory.resolve(plugins.relativize(source));
+            if (Files.exists(entry)) {
+                continue;
+            }
+
+            boolean stored = CacheFiles.store(
+                this.directory,
+                source,
+                entry,
+                false,
+                temp -> Files.writeString(temp.resolve(CHECKSUM_FILE), checksum(temp)),
+                cached -> this.evict()
+            );
+            if (stored) {
+                added += size(source);
+            }
+        }
+
+        return added;
+    }
+
+    private List<Path> entries() throws IOException {
+        if (!Files.isDirectory(this.directory)) {
+            return List.of();
+        }
+
+        try (Stream<Path> paths = Files.find(this.directory, PluginReference.DEPTH, (path, attributes) -> attributes.isDirectory() && this.directory.relativize(path).getNameCount() == PluginReference.DEPTH && !path.getFileName().toString().startsWith(CacheFiles.TEMP_PREFIX))) {
+            return paths.toList();
+        }
+    }
+
+    private void evict() throws IOException {
+        List<Path> entries = new ArrayList<>(this.entries());
+        entries.sort(Comparator.comparing(PluginCache::lastUsed));
+
+        long size = 0;
+        for (Path entry : entries) {
+            size += size(entry);
+        }
+
+        for (Path entry : entries) {
+            if (size <= this.maxSize) {
+                return;
+            }
+
+            this.logger.debug("Evicting CloudQuery plugin cache entry '{}'", this.directory.relativize(entry));
+            size -= size(entry);
+            CacheFiles.delete(entry);
+        }
+    }
+
+    private static FileTime lastUsed(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry.resolve(CHECKSUM_FILE));
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    static String checksum(Path entry) throws IOException {
+        MessageDigest digest = Hashes.sha256();
+
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(entry)) {
+            files = paths.filter(Files::isRegularFile).filter(path -> !path.getFileName().toString().equals(CHECKSUM_FILE)).sorted().toList();
+        }
+
+        for (Path file : files) {
+            digest.update(entry.relativize(file).toString().getBytes());
+            Hashes.update(digest, file);
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static long size(Path entry) throws IOException {
+        try (Stream<Path> paths = Files.walk(entry)) {
+            return paths
+                .filter(Files::isRegularFile)
+                .filter(path -> !path.getFileName().toString().equals(CHECKSUM_FILE))
+                .mapToLong(path -> path.toFile().length())
+                .sum();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.runners.RunContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Resolves CloudQuery plugins from Kestra internal storage instead of the CloudQuery registries.
+ * <p>
+ * Plugin binaries (or the zip archives published on the CloudQuery hub) are read from internal storage into the working
+ * directory, and configurations are rewritten to use them through the {@code local} registry.
+ */
+class PluginMirror {
+    static final String DIRECTORY = "cloudquery-plugins";
+
+    private PluginMirror() {
+    }
+
+    /**
+     * The key identifying a plugin in the mirror: {@code <path>@<version>}, e.g. {@code cloudquery/aws@v22.14.0}.
+     */
+    static String key(PluginReference plugin) {
+        return plugin.getPath() + "@" + plugin.getVersion();
+    }
+
+    /**
+     * Extract every mirrored plugin into the working directory.
+     *
+     * @param archives internal storage URIs of the plugins, by {@link #key(PluginReference)}
+     * @return the path of each plugin binary relative to the working directory, by key
+     */
+    static Map<String, String> materialize(RunContext runContext, Path workingDirectory, Map<String, String> archives) throws Exception {
+        Map<String, String> binaries = new HashMap<>();
+        for (Map.Entry<String, String> archive : archives.entrySet()) {
+            String relative = DIRECTORY + "/" + archive.getKey().replace('@', '/') + "/plugin";
+            Path binary = workingDirectory.resolve(relative);
+            Files.createDirectories(binary.getParent());
+
+            URI uri = URI.create(archive.getValue());
+            try (InputStream input = runContext.storage().getFile(uri)) {
+                if (uri.getPath().endsWith(".zip")) {
+                    extract(input, binary);
+                } else {
+                    Files.copy(input, binary, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+
+            if (!binary.toFile().setExecutable(true)) {
+                throw new IOException("Unable to make plugin '" + archive.getKey() + "' executable");
+            }
+
+            binaries.put(archive.getKey(), "./" + relative);
+        }
+
+        return binaries;
+    }
+
+    /**
+     * Point the plugins of {@code configs} found in {@code binaries} to their local copy.
+     */
+    @SuppressWarnings("unchecked")
+    static void rewrite(List<Map<String, Object>> configs, Map<String, String> binaries) {
+        for (Map<String, Object> config : configs) {
+            List<PluginReference> plugins = PluginReference.of(List.of(config));
+            if (plugins.isEmpty() || !binaries.containsKey(key(plugins.get(0)))) {
+                continue;
+            }
+
+            Map<String, Object> spec = new HashMap<>((Map<String, Object>) config.get("spec"));
+            spec.put("registry", "local");
+            spec.put("path", binaries.get(key(plugins.get(0))));
+            config.put("spec", spec);
+        }
+    }
+
+    private static void extract(InputStream input, Path binary) throws IOException {
+        try (ZipInputStream zip = new ZipInputStream(input)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    Files.copy(zip, binary, StandardCopyOption.REPLACE_EXISTING);
+                    return;
+                }
+            }
+        }
+
+        throw new IOException("Plugin archive doesn't contain any file");
+    }
+}
@@ -0,0 +1,75 @@
+package io.kestra.plugin.cloudquery;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import io.kestra.core.serializers.JacksonMapper;
+import lombok.Value;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A source or destination plugin referenced by a CloudQuery configuration.
+ */
+@Value
+class PluginReference {
+    /**
+     * Depth of a plugin version directory below the CloudQuery plugins directory: {@code <kind>/<team>/<name>/<version>}.
+     */
+    static final int DEPTH = 4;
+
+    // registries downloading plugin archives, `docker`, `local` and `grpc` plugins are not downloaded by CloudQuery
+    private static final Set<String> DOWNLOADED_REGISTRIES = Set.of("cloudquery", "github");
+
+    String kind;
+    String path;
+    String version;
+    String registry;
+
+    boolean isDownloaded() {
+        return DOWNLOADED_REGISTRIES.contains(this.registry) && this.path.contains("/") && this.version != null;
+    }
+
+    Path relativePath() {
+        String[] parts = this.path.split("/", 2);
+        return Path.of(this.kind, parts[0], parts[1], this.version);
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<PluginReference> of(List<Map<String, Object>> configs) {
+        List<PluginReference> plugins = new ArrayList<>();
+        for (Map<String, Object> config : configs) {
+            if (!(config.get("kind") instanceof String kind) || !(config.get("spec") instanceof Map<?, ?> rawSpec)) {
+                continue;
+            }
+
+            Map<String, Object> spec = (Map<String, Object>) rawSpec;
+            if (!(spec.get("path") instanceof String path)) {
+                continue;
+            }
+
+            plugins.add(new PluginReference(
+                kind,
+                path,
+                (String) spec.get("version"),
+                spec.get("registry") instanceof String registry ? registry : "cloudquery"
+            ));
+        }
+
+        return plugins;
+    }
+
+    /**
+     * The plugins referenced by a CloudQuery configuration file, made of one or several YAML documents.
+     */
+    static List<PluginReference> ofYaml(String content) throws IOException {
+        try (MappingIterator<Map<String, Object>> documents = JacksonMapper.ofYaml().readerFor(new TypeReference<Map<String, Object>>() {}).readValues(content)) {
+            return of(documents.readAll().stream().filter(Objects::nonNull).toList());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
+import io.kestra.core.models.annotations.Example;
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.annotations.PluginProperty;
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.runners.RunContext;
+import io.kestra.plugin.scripts.exec.scripts.runners.CommandsWrapper;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import jakarta.validation.constraints.NotNull;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(
+    title = "Download CloudQuery plugins into the worker plugin cache.",
+    description = "Resolves every source and destination plugin of the given configurations and downloads the ones missing from the plugin cache, " +
+        "so later `Sync` and `CloudQueryCLI` tasks using `pluginCache: true` don't need to download them. The plugin cache is always enabled for this task, whatever `pluginCache`. " +
+        "The task neither runs plugins nor produces output files: `pluginMirror`, `outputFilesConcurrency` and `compressOutputFiles` are rejected."
+)
+@Plugin(
+    examples = {
+        @Example(
+            title = "Refresh the plugin cache every night.",
+            full = true,
+            code = """
+                id: cloudquery_prefetch
+                namespace: company.team
+
+                tasks:
+                  - id: prefetch
+                    type: io.kestra.plugin.cloudquery.PrefetchPlugins
+                    env:
+                      CLOUDQUERY_API_KEY: "{{ secret('CLOUDQUERY_API_KEY') }}"
+                    configs:
+                      - kind: source
+                        spec:
+                          name: aws
+                          path: cloudquery/aws
+                          version: v22.14.0
+                          tables: ["*"]
+                          destinations: ["postgresql"]
+                      - kind: destination
+                        spec:
+                          name: postgresql
+                          path: cloudquery/postgresql
+                          version: v8.0.7
+
+                triggers:
+                  - id: nightly
+                    type: io.kestra.plugin.core.trigger.Schedule
+                    cron: '0 2 * * *'"""
+        )
+    }
+)
+public class PrefetchPlugins extends AbstractCloudQueryCommand implements RunnableTask<PrefetchPlugins.Output> {
+    @Schema(
+        title = "CloudQuery configurations.",
+        description = "A list of CloudQuery configurations or files containing CloudQuery configurations, in the same format as the `Sync` task.",
+        anyOf = {String[].class, Map[].class}
+    )
+    @PluginProperty
+    @NotNull
+    private List<Object> configs;
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        if (this.getPluginMirror() != null || this.isTaskUploadingOutputFiles(runContext)) {
+            throw new IllegalArgumentException("'pluginMirror', 'outputFilesConcurrency' and 'compressOutputFiles' are not supported by PrefetchPlugins, it neither runs plugins nor produces output files");
+        }
+
+        String nativeBinary = this.nativeBinary(runContext);
+        CommandsWrapper commands = new CommandsWrapper(runContext)
+            .withWarningOnStdErr(true)
+            .withDockerOptions(nativeBinary == null ? injectDefaults(getDocker()) : null)
+            .withTaskRunner(this.taskRunner(nativeBinary))
+            .withContainerImage(runContext.render(this.getContainerImage()).as(String.class).orElseThrow())
+            .withEnv(runContext.render(this.getEnv()).asMap(String.class, String.class).isEmpty() ? new HashMap<>() : runContext.render(this.getEnv()).asMap(String.class, String.class));
+
+        Path workingDirectory = commands.getWorkingDirectory();
+
+        List<Map<String, Object>> configs = readConfigs(runContext, this.configs);
+        // several configurations can use the same plugin, e.g. one source per account
+        List<PluginReference> plugins = PluginReference.of(configs).stream()
+            .filter(PluginReference::isDownloaded)
+            .distinct()
+            .toList();
+
+        PluginCache cache = this.pluginCache(runContext);
+        Path pluginsDirectory = workingDirectory.resolve(PluginCache.DEFAULT_CQ_DIRECTORY).resolve("plugins");
+        int hits = cache.restore(pluginsDirectory, plugins);
+
+        long bytesFetched = 0;
+        if (hits < plugins.size()) {
+            List<String> cmds = new ArrayList<>(List.of("plugin", "install"));
+            cmds.addAll(writeConfigs(workingDirectory, configs));
+
+            commands.withCommands(cloudqueryCommand(nativeBinary, cmds)).run();
+            bytesFetched = cache.store(pluginsDirectory);
+        }
+
+        Metrics.emit(runContext, Counter.of("plugins.cache.hits", hits));
+        Metrics.emit(runContext, Counter.of("plugins.fetched.bytes", bytesFetched));
+
+        return Output.builder()
+            .plugins(plugins.size())
+            .cacheHits(hits)
+            .bytesFetched(bytesFetched)
+            .build();
+    }
+
+    @Override
+    protected boolean isPluginCacheEnabled(RunContext runContext) throws IllegalVariableEvaluationException {
+        return true;
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(title = "The number of plugins referenced by the configurations.")
+        private final int plugins;
+
+        @Schema(title = "The number of plugins already in the cache.")
+        private final int cacheHits;
+
+        @Schema(title = "The number of bytes of plugins downloaded and added to the cache.")
+        private final long bytesFetched;
+    }
+}
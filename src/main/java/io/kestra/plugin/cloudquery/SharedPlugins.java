@@ -0,0 +1,67 @@
+package io.kestra.plugin.cloudquery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plugins shared by the CloudQuery processes of a sync, so that shards and fan-out parameter sets don't each download
+ * and unpack their own copy.
+ * <p>
+ * Missing plugins are installed into the default CloudQuery directory, one process at a time, and the {@code plugins}
+ * directory of each process is a link to the shared one, so CloudQuery finds them already installed.
+ */
+class SharedPlugins {
+    private final Path workingDirectory;
+    private final Set<PluginReference> installed = new HashSet<>();
+
+    SharedPlugins(Path workingDirectory) {
+        this.workingDirectory = workingDirectory;
+    }
+
+    /**
+     * Run {@code installer} when any of the downloaded {@code plugins} is not installed yet, then link the plugins
+     * directory of {@code cqDirectory} to the shared one.
+     *
+     * @param cqDirectory the CloudQuery directory of the process, relative to the working directory
+     */
+    void install(Collection<PluginReference> plugins, String cqDirectory, Installer installer) throws Exception {
+        synchronized (this) {
+            List<PluginReference> missing = plugins.stream()
+                .filter(PluginReference::isDownloaded)
+                .filter(plugin -> !this.installed.contains(plugin))
+                .toList();
+
+            if (!missing.isEmpty()) {
+                installer.install();
+                this.installed.addAll(missing);
+            }
+        }
+
+        this.link(cqDirectory);
+    }
+
+    private void link(String cqDirectory) throws IOException {
+        Path shared = this.workingDirectory.resolve(PluginCache.DEFAULT_CQ_DIRECTORY).resolve("plugins");
+        Files.createDirectories(shared);
+
+        Path link = this.workingDirectory.resolve(cqDirectory).resolve("plugins");
+        if (Files.exists(link, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+
+        Files.createDirectories(link.getParent());
+        // relative, so the link also resolves inside the container mounting the working directory
+        Files.createSymbolicLink(link, link.getParent().relativize(shared));
+    }
+
+    @FunctionalInterface
+    interface Installer {
+        void install() throws Exception;
+    }
+}
@@ -0,0 +1,99 @@
+package io.kestra.plugin.cloudquery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Worker-local, size-bounded LRU cache of incremental state databases.
+ * <p>
+ * Each entry is keyed by tenant, namespace, flow, task, task run value and database name, and holds the fingerprint of
+ * the database next to it. An entry is only used when its fingerprint matches the one of the state stored in Kestra, so
+ * a stale cache (e.g. the previous execution ran on another worker) simply falls back to the state store.
+ */
+class StateCache {
+    static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("java.io.tmpdir"), "kestra-cloudquery", "state");
+
+    private static final String HASH_SUFFIX = ".hash";
+
+    private final Path directory;
+    private final long maxSize;
+
+    StateCache(Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Copy the cached database for {@code key} into {@code target} if its fingerprint is {@code hash}.
+     *
+     * @return whether the cache was hit
+     */
+    boolean restore(String key, String hash, Path target) throws IOException {
+        Path file = this.directory.resolve(key);
+        Path hashFile = this.directory.resolve(key + HASH_SUFFIX);
+
+        synchronized (CacheFiles.LOCK) {
+            if (!Files.exists(file) || !Files.exists(hashFile) || !hash.equals(Files.readString(hashFile))) {
+                return false;
+            }
+
+            Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+
+        return true;
+    }
+
+    /**
+     * Store a copy of {@code source} with its fingerprint, evicting the least recently used entries above the size cap.
+     */
+    void store(String key, String hash, Path source) throws IOException {
+        if (Files.size(source) > this.maxSize) {
+            return;
+        }
+
+        CacheFiles.store(this.directory, source, this.directory.resolve(key), true, null, entry -> {
+            Files.writeString(this.directory.resolve(key + HASH_SUFFIX), hash);
+            this.evict();
+        });
+    }
+
+    private void evict() throws IOException {
+        List<Path> entries;
+        try (Stream<Path> files = Files.list(this.directory)) {
+            entries = files
+                .filter(path -> !path.getFileName().toString().endsWith(HASH_SUFFIX) && !path.getFileName().toString().startsWith(CacheFiles.TEMP_PREFIX))
+                .sorted(Comparator.comparing(StateCache::lastModified))
+                .toList();
+        }
+
+        long size = 0;
+        for (Path entry : entries) {
+            size += Files.size(entry);
+        }
+
+        for (Path entry : entries) {
+            if (size <= this.maxSize) {
+                return;
+            }
+
+            size -= Files.size(entry);
+            Files.deleteIfExists(entry);
+            Files.deleteIfExists(entry.resolveSibling(entry.getFileName() + HASH_SUFFIX));
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
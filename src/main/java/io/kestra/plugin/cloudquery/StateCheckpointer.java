@@ -0,0 +1,85 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.runners.RunContext;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically saves the incremental database while CloudQuery is still writing to it.
+ * <p>
+ * Each checkpoint copies the database with the SQLite online backup API, which reads it inside a single transaction, so
+ * the snapshot handed to the persister is always consistent even if CloudQuery commits in the meantime.
+ */
+class StateCheckpointer implements AutoCloseable {
+    private final RunContext runContext;
+    private final Path database;
+    private final Persister persister;
+    private final ScheduledExecutorService scheduler;
+
+    StateCheckpointer(RunContext runContext, Path database, Duration interval, Persister persister) {
+        this.runContext = runContext;
+        this.database = database;
+        this.persister = persister;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.scheduler.scheduleWithFixedDelay(this::checkpoint, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void checkpoint() {
+        if (!Files.exists(this.database)) {
+            return;
+        }
+
+        Path snapshot = null;
+        try {
+            snapshot = Files.createTempFile(this.runContext.tempDir(), "checkpoint", ".sqlite");
+            backup(this.database, snapshot);
+
+            if (this.persister.persist(snapshot)) {
+                this.runContext.logger().info("Incremental state checkpointed");
+            }
+        } catch (Exception e) {
+            // a failed checkpoint must not fail the sync, the state is saved again at the end
+            this.runContext.logger().warn("Unable to checkpoint the incremental state", e);
+        } finally {
+            if (snapshot != null) {
+                snapshot.toFile().delete();
+            }
+        }
+    }
+
+    static void backup(Path database, Path target) throws Exception {
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + database.toAbsolutePath());
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("backup to \"" + target.toAbsolutePath() + "\"");
+        }
+    }
+
+    /**
+     * Stop checkpointing, waiting for a running checkpoint to finish however long it takes, so it can't race with the
+     * final save.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        this.scheduler.shutdown();
+        while (!this.scheduler.awaitTermination(1, TimeUnit.MINUTES)) {
+            this.runContext.logger().info("Waiting for the running incremental state checkpoint to finish");
+        }
+    }
+
+    interface Persister {
+        /**
+         * @return whether the snapshot changed the saved state
+         */
+        boolean persist(Path snapshot) throws Exception;
+    }
+}
@@ -1,17 +1,17 @@
 package io.kestra.plugin.cloudquery;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.kestra.core.exceptions.IllegalVariableEvaluationException;
 import io.kestra.core.models.annotations.Example;
 import io.kestra.core.models.annotations.Plugin;
 import io.kestra.core.models.annotations.PluginProperty;
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.flows.State;
 import io.kestra.core.models.property.Property;
 import io.kestra.core.models.tasks.*;
+import io.kestra.core.runners.FilesService;
 import io.kestra.core.runners.RunContext;
-import io.kestra.core.serializers.JacksonMapper;
-import io.kestra.core.storages.StorageContext;
-import io.kestra.core.utils.IdUtils;
+import io.kestra.plugin.scripts.exec.scripts.models.DockerOptions;
 import io.kestra.plugin.scripts.exec.scripts.models.ScriptOutput;
 import io.kestra.plugin.scripts.exec.scripts.runners.CommandsWrapper;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -19,15 +19,18 @@ import lombok.*;
 import lombok.experimental.SuperBuilder;
 
 import jakarta.validation.constraints.NotNull;
-import java.io.*;
+import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
-
-import static io.kestra.core.utils.Rethrow.throwConsumer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 @SuperBuilder
 @ToString
@@ -95,10 +98,11 @@ import static io.kestra.core.utils.Rethrow.throwConsumer;
         )
     }
 )
-public class Sync extends AbstractCloudQueryCommand implements RunnableTask<ScriptOutput>, NamespaceFilesInterface, InputFilesInterface, OutputFilesInterface {
-    private static final ObjectMapper OBJECT_MAPPER = JacksonMapper.ofYaml();
-    private static final String DB_FILENAME = "icrementaldb.sqlite";
-    private static final String CLOUD_QUERY_STATE = "CloudQueryState";
+public class Sync extends AbstractCloudQueryCommand implements RunnableTask<Sync.Output>, NamespaceFilesInterface, InputFilesInterface, OutputFilesInterface {
+    private static final String DB_FILENAME = IncrementalStateStore.DB_FILENAME;
+    private static final String INCREMENTAL_TABLE_NAME = "kestra_incremental_table";
+    private static final String INCREMENTAL_DESTINATION_NAME = "kestra_incremental_db";
+    private static final Duration OUTPUT_FILES_POLL_INTERVAL = Duration.ofSeconds(5);
 
     @Schema(
         title = "CloudQuery configurations.",
@@ -117,6 +121,163 @@ public class Sync extends AbstractCloudQueryCommand implements RunnableTask<Scri
     @Builder.Default
     private Property<Boolean> incremental = Property.of(false);
 
+    @Schema(
+        title = "Where to store the incremental indexes.",
+        description = """
+            `STATE_STORE` stores the whole incremental database as one state, uploading only the parts that changed.
+            `KV_STORE` stores each cursor as its own entry in the namespace KV Store, so executions syncing different tables don't contend.
+            `DESTINATION` stores the cursors in one of the sync destinations (see `incrementalDestination`), which avoids launching the bundled SQLite destination and transferring its database."""
+    )
+    @Builder.Default
+    private Property<IncrementalBackend> incrementalBackend = Property.of(IncrementalBackend.STATE_STORE);
+
+    @Schema(
+        title = "The name of the destination storing the incremental indexes when `incrementalBackend` is `DESTINATION`.",
+        description = "The destination plugin must support being used as a state backend (e.g. PostgreSQL, DuckDB, SQLite). " +
+            "Defaults to the only destination of the configurations."
+    )
+    private Property<String> incrementalDestination;
+
+    @Schema(
+        title = "Maximum size in bytes of the worker-local cache of incremental indexes.",
+        description = "When greater than 0, the incremental index is kept in a least-recently-used cache on the worker, " +
+            "so the next execution running on the same worker doesn't need to download it from the state store. " +
+            "The cached copy is only used if it matches the latest index stored by Kestra. Only applies to the `STATE_STORE` backend."
+    )
+    @Builder.Default
+    private Property<Long> stateCacheSize = Property.of(0L);
+
+    @Schema(
+        title = "The number of CloudQuery processes to split the sync into.",
+        description = "The `tables` list of each source is split into this many disjoint groups, each synced by its own CloudQuery process, running concurrently. " +
+            "Each entry of the list, wildcards included, is synced by a single process, so entries must not overlap. Sources without a `tables` list are synced by the first process. " +
+            "With incremental syncs, each process keeps its own incremental index, changing the number of shards or the list of tables resets the index of the tables moving to another process."
+    )
+    @Builder.Default
+    private Property<Integer> shards = Property.of(1);
+
+    @Schema(
+        title = "Parameter sets to run the sync for, e.g. accounts, regions or projects.",
+        description = "When set, the configurations are instantiated once per parameter set, replacing the `{{ fanOut.<key> }}` expressions with the values of the set (e.g. `{{ fanOut.account_id }}`), " +
+            "and each instance is synced by its own CloudQuery process inside this task. " +
+            "Only these expressions are replaced, other expressions such as the `{{TABLE}}` placeholders of CloudQuery destinations are kept as is; " +
+            "a value made of a single expression is replaced with the parameter itself, so lists can be used as well. " +
+            "The processes share the plugins, which are only downloaded once. " +
+            "Include a parameter in the source name so that processes don't delete each other's rows with `overwrite-delete-stale`. " +
+            "With incremental syncs, each parameter set keeps its own incremental index."
+    )
+    private Property<List<Map<String, Object>>> fanOut;
+
+    @Schema(
+        title = "The maximum number of CloudQuery processes running at the same time when using `fanOut`."
+    )
+    @Builder.Default
+    private Property<Integer> fanOutConcurrency = Property.of(4);
+
+    @Schema(
+        title = "Whether to tune CloudQuery to the CPU and memory available to the sync.",
+        description = "The limits of the task runner are used when set (e.g. `cpu` and `memory` of the Docker task runner), otherwise the resources of the worker, " +
+            "shared between the CloudQuery processes running at the same time. " +
+            "This sets `GOMAXPROCS` and `GOMEMLIMIT`, the `concurrency` of the AWS, Azure, GCP, GitHub and Kubernetes sources (`item_concurrency` for Hacker News), " +
+            "and `batch_size` and `batch_size_bytes` of the BigQuery, ClickHouse, DuckDB, File, GCS, PostgreSQL, S3, Snowflake and SQLite destinations. " +
+            "Values set in `env` or in the configurations are kept."
+    )
+    @Builder.Default
+    private Property<Boolean> autoTune = Property.of(false);
+
+    @Schema(
+        title = "Whether to adjust the concurrency of the sources from the statistics of their previous runs.",
+        description = "After each run, the duration, rows synced and rate limit warnings of each source are kept in the state store. " +
+            "The next run halves the concurrency of the sources that hit rate limits and increases it by a quarter for the others, between `minConcurrency` and `maxConcurrency`. " +
+            "Only applies to the sources supported by `autoTune`, the first run uses the concurrency of the configuration, or `minConcurrency` if not set."
+    )
+    @Builder.Default
+    private Property<Boolean> adaptiveConcurrency = Property.of(false);
+
+    @Schema(
+        title = "The lower bound of the concurrency of a source when using `adaptiveConcurrency`."
+    )
+    @Builder.Default
+    private Property<Long> minConcurrency = Property.of(100L);
+
+    @Schema(
+        title = "The upper bound of the concurrency of a source when using `adaptiveConcurrency`."
+    )
+    @Builder.Default
+    private Property<Long> maxConcurrency = Property.of(10000L);
+
+    @Schema(
+        title = "The maximum duration of the sync before CloudQuery is asked to stop.",
+        description = "When reached, CloudQuery is interrupted (SIGINT) so that it flushes the rows and cursors already fetched, " +
+            "the incremental indexes are saved as usual and the task succeeds with the `completed` output set to `false`. " +
+            "With `incremental`, the next execution resumes from the saved cursors. " +
+            "CloudQuery is then run through `/bin/sh`, so the container image must provide a shell (the default image does)."
+    )
+    private Property<Duration> maxDuration;
+
+    @Schema(
+        title = "How often to save the incremental indexes while the sync is running.",
+        description = "By default, the incremental indexes are only saved once CloudQuery exits, so a worker crash loses the progress of the whole sync. " +
+            "When set, a consistent snapshot of the incremental database is taken at this interval with the SQLite online backup API, and saved if it changed. " +
+            "Only applies to the `STATE_STORE` and `KV_STORE` backends, with a task runner using a local working directory (e.g. Docker or Process)."
+    )
+    private Property<Duration> checkpointInterval;
+
+    @Schema(
+        title = "Whether to read the totals of the `summary` output from the summary file written by CloudQuery.",
+        description = "Passes `--summary-location` to `cloudquery sync`, which older CloudQuery CLIs reject. " +
+            "Without it, the rows of the `summary` output are counted from the logs, and its errors and warnings are left at zero."
+    )
+    @Builder.Default
+    private Property<Boolean> summaryFile = Property.of(false);
+
+    @Schema(
+        title = "Whether to only sync the failed tables again when the task is retried.",
+        description = "A table fails when CloudQuery reports errors while syncing it. When enabled, the task fails if any table failed, with the `tableStatuses` output still available, " +
+            "and the next attempts of the same execution (task retries or execution restarts) restrict the `tables` of each source to the tables that failed, " +
+            "skipping the sources without failed tables. The failed tables are kept in the namespace KV Store for 7 days."
+    )
+    @Builder.Default
+    private Property<Boolean> retryFailedTables = Property.of(false);
+
+    @Schema(
+        title = "Refresh intervals of tables synced less often than the others.",
+        description = """
+            A map of table pattern (`*` and `?` wildcards) to ISO-8601 duration, e.g. `aws_iam_*: P1D`.
+            The entries of the `tables` list of the sources matching a pattern are only synced once their interval elapsed since their last sync, the other entries are synced on every run, so frequent runs stay short.
+            Patterns apply to the entries of the `tables` list as written, list the tables to tier explicitly rather than using `*`.
+            When several patterns match an entry, the most specific one applies, e.g. `aws_iam_*` rather than `aws_*`.
+            The last sync of each pattern is kept in the state store and only updated by successful runs."""
+    )
+    private Property<Map<String, String>> tableIntervals;
+
+    @Schema(
+        title = "Store every synced table in Kestra internal storage, in this format.",
+        description = "When set, a destination is added to the configurations and to the `destinations` of every source. " +
+            "CloudQuery writes the rows of each table directly in this format to the working directory, without going through `outputFiles`. " +
+            "The files are only uploaded to internal storage once CloudQuery exits, so the working directory must have room for every synced row. " +
+            "The URIs are available in the `tableFiles` output, by table."
+    )
+    private Property<InternalStorageFormat> internalStorageFormat;
+
+    @Schema(
+        title = "Whether to write each table to a single file when using `internalStorageFormat`.",
+        description = "By default CloudQuery writes a new file for every batch. When enabled, file rotation is disabled and each CloudQuery process writes the rows of a table to a single file " +
+            "in the chosen format, e.g. a single Parquet file per table, so that downstream tasks read one file per table and process. " +
+            "Shards and fan-out parameter sets each produce their own file."
+    )
+    @Builder.Default
+    private Property<Boolean> internalStorageFilePerTable = Property.of(false);
+
+    @Schema(
+        title = "Whether to upload `outputFiles` while the sync is still running.",
+        description = "The working directory is polled every few seconds and each matching file is uploaded once its size and modification time " +
+            "didn't change between two polls, so that large syncs don't wait for every file to be uploaded after CloudQuery exits. " +
+            "Files changed after their upload are uploaded again at the end. Only supported by task runners using a local working directory, such as the Docker and Process task runners."
+    )
+    @Builder.Default
+    private Property<Boolean> streamOutputFiles = Property.of(false);
+
     private NamespaceFiles namespaceFiles;
 
     private Object inputFiles;
@@ -124,118 +285,650 @@ public class Sync extends AbstractCloudQueryCommand implements RunnableTask<Scri
     private Property<List<String>> outputFiles;
 
     @Override
-    public ScriptOutput run(RunContext runContext) throws Exception {
+    public Output run(RunContext runContext) throws Exception {
+        Instant start = Instant.now();
         var renderedOutputFiles = runContext.render(this.outputFiles).asList(String.class);
+        Instant deadline = runContext.render(this.maxDuration).as(Duration.class).map(start::plus).orElse(null);
+
+        String nativeBinary = this.nativeBinary(runContext);
+        DockerOptions dockerOptions = nativeBinary == null ? injectDefaults(getDocker()) : null;
+        if (deadline != null && dockerOptions != null && (dockerOptions.getEntryPoint() == null || dockerOptions.getEntryPoint().isEmpty())) {
+            // the time box runs CloudQuery from a shell, like CloudQueryCLI
+            dockerOptions = dockerOptions.toBuilder().entryPoint(List.of("")).build();
+        }
 
         CommandsWrapper commands = new CommandsWrapper(runContext)
             .withWarningOnStdErr(true)
-            .withDockerOptions(injectDefaults(getDocker()))
-            .withTaskRunner(this.getTaskRunner())
+            .withDockerOptions(dockerOptions)
+            .withTaskRunner(this.taskRunner(nativeBinary))
             .withContainerImage(runContext.render(this.getContainerImage()).as(String.class).orElseThrow())
             .withEnv(runContext.render(this.getEnv()).asMap(String.class, String.class).isEmpty() ? new HashMap<>() : runContext.render(this.getEnv()).asMap(String.class, String.class))
             .withNamespaceFiles(namespaceFiles)
-            .withInputFiles(inputFiles)
-            .withOutputFiles(renderedOutputFiles.isEmpty() ? null : renderedOutputFiles);
+            .withInputFiles(inputFiles);
 
         Path workingDirectory = commands.getWorkingDirectory();
 
-        File incrementalDBFile = new File(workingDirectory + "/" + DB_FILENAME);
+        List<Map<String, Object>> configs = readConfigs(runContext, this.configs);
 
-        try {
-            InputStream taskCacheFile = runContext.stateStore().getState(
-                CLOUD_QUERY_STATE,
-                DB_FILENAME,
-                runContext.storage().getTaskStorageContext().map(StorageContext.Task::getTaskRunValue).orElse(null)
+        TableTiers tableTiers = this.tableTiers(runContext);
+        if (tableTiers != null) {
+            configs = tableTiers.due(configs, start);
+            if (configs.stream().noneMatch(config -> Objects.equals(config.get("kind"), "source"))) {
+                runContext.logger().info("No table is due, skipping the sync");
+                return Output.of(skippedScriptOutput(), SyncSummary.builder().tables(Map.of()).duration(Duration.ZERO).build(), true, Map.of(), Map.of(), false);
+            }
+        }
+
+        Map<String, String> mirroredPlugins = materializePluginMirror(runContext, workingDirectory);
+        List<Map<String, Object>> parameterSets = runContext.render(this.fanOut).asList(Map.class).stream()
+            .map(FanOut::parameterSet)
+            .toList();
+        List<SyncUnit> units = this.units(runContext, configs, parameterSets);
+
+        boolean renderedRetryFailedTables = runContext.render(this.retryFailedTables).as(Boolean.class).orElse(false);
+        FailedTables failedTables = new FailedTables(runContext);
+        if (renderedRetryFailedTables) {
+            units = restrictToFailedTables(runContext, units, failedTables.load());
+        }
+
+        int concurrency = parameterSets.isEmpty() ? units.size() : Math.min(runContext.render(this.fanOutConcurrency).as(Integer.class).orElseThrow(), units.size());
+
+        AutoTune autoTune = this.autoTune(runContext, concurrency, nativeBinary);
+        if (autoTune != null) {
+            units = units.stream().map(unit -> new SyncUnit(unit.name(), autoTune.apply(unit.configs()))).toList();
+            commands = commands.withEnv(withAutoTuneEnv(commands.getEnv(), autoTune));
+        }
+
+        ConcurrencyTuner concurrencyTuner = this.concurrencyTuner(runContext);
+        if (concurrencyTuner != null) {
+            List<SyncUnit> tunedUnits = new ArrayList<>();
+            for (SyncUnit unit : units) {
+                tunedUnits.add(new SyncUnit(unit.name(), concurrencyTuner.apply(unit.configs())));
+            }
+            units = tunedUnits;
+        }
+
+        boolean renderedStreamOutputFiles = runContext.render(this.streamOutputFiles).as(Boolean.class).orElse(false);
+        boolean taskUploadingOutputFiles = renderedStreamOutputFiles || this.isTaskUploadingOutputFiles(runContext);
+        try (OutputFilesUploader uploader = renderedOutputFiles.isEmpty() || !taskUploadingOutputFiles ? null : this.outputFilesUploader(runContext)) {
+            if (uploader != null && renderedStreamOutputFiles) {
+                uploader.watch(workingDirectory, renderedOutputFiles, OUTPUT_FILES_POLL_INTERVAL);
+            }
+
+            // a single process lets the task runner collect the output files, several processes share the working
+            // directory so output files are collected once all of them are done
+            boolean runnerOutputFiles = uploader == null && units.size() == 1 && !renderedOutputFiles.isEmpty();
+            List<ProcessOutput> outputs = this.runProcesses(
+                runContext,
+                commands.withOutputFiles(runnerOutputFiles ? renderedOutputFiles : null),
+                units,
+                concurrency,
+                new ProcessContext(mirroredPlugins, deadline, nativeBinary, new SharedPlugins(workingDirectory))
             );
-            Files.copy(taskCacheFile, incrementalDBFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        } catch (FileNotFoundException exception) {
-            if (!incrementalDBFile.createNewFile()) {
-                throw new IOException("Unable to create incremental backend file.");
+
+            if (concurrencyTuner != null) {
+                // failed processes included, so that the sources throttled until they failed back off
+                recordStatistics(concurrencyTuner, units, outputs);
+            }
+
+            Optional<Exception> failure = outputs.stream().map(ProcessOutput::failure).filter(Objects::nonNull).findFirst();
+            if (failure.isPresent()) {
+                throw failure.get();
+            }
+
+            ScriptOutput output = SyncShards.merge(outputs.stream().map(ProcessOutput::script).toList());
+            if (uploader != null) {
+                output = uploadOutputFiles(uploader, output, workingDirectory, renderedOutputFiles);
+            } else if (!runnerOutputFiles && !renderedOutputFiles.isEmpty()) {
+                output.getOutputFiles().putAll(FilesService.outputFiles(runContext, renderedOutputFiles));
+            }
+
+            Map<String, TableStatus> tableStatuses = new HashMap<>();
+            Map<String, String> tableSources = new HashMap<>();
+            Map<String, List<URI>> tableFiles = new HashMap<>();
+            for (ProcessOutput processOutput : outputs) {
+                processOutput.tableFiles().forEach((table, uris) -> tableFiles.computeIfAbsent(table, k -> new ArrayList<>()).addAll(uris));
+                processOutput.logConsumer().getTableStatuses().forEach((table, status) ->
+                    tableStatuses.merge(table, status, (previous, current) -> previous == TableStatus.FAILED ? previous : current)
+                );
+                tableSources.putAll(processOutput.logConsumer().getTableSources());
+            }
+
+            boolean completed = outputs.stream().allMatch(ProcessOutput::completed);
+            boolean tablesFailed = renderedRetryFailedTables && saveFailedTables(runContext, failedTables, tableStatuses, tableSources);
+            if (tableTiers != null && completed && !tablesFailed) {
+                tableTiers.save(start);
             }
+
+            return Output.of(
+                output,
+                SyncSummary.merge(outputs.stream().map(ProcessOutput::summary).toList(), Duration.between(start, Instant.now())),
+                completed,
+                tableStatuses,
+                tableFiles,
+                tablesFailed
+            );
+        }
+    }
+
+    private TableTiers tableTiers(RunContext runContext) throws IllegalVariableEvaluationException {
+        Map<String, String> renderedTableIntervals = runContext.render(this.tableIntervals).asMap(String.class, String.class);
+        if (renderedTableIntervals.isEmpty()) {
+            return null;
+        }
+
+        Map<String, Duration> intervals = new LinkedHashMap<>();
+        renderedTableIntervals.forEach((pattern, interval) -> intervals.put(pattern, Duration.parse(interval)));
+        return new TableTiers(runContext, intervals);
+    }
+
+    /**
+     * Split the configurations into units synced by their own CloudQuery process: one per parameter set of
+     * {@link #fanOut}, each split into {@link #shards}.
+     */
+    private List<SyncUnit> units(RunContext runContext, List<Map<String, Object>> configs, List<Map<String, Object>> parameterSets) throws Exception {
+        int renderedShards = runContext.render(this.shards).as(Integer.class).orElse(1);
+        if (parameterSets.isEmpty()) {
+            return shardUnits(null, configs, renderedShards);
+        }
+
+        List<SyncUnit> units = new ArrayList<>();
+        for (Map<String, Object> parameterSet : parameterSets) {
+            units.addAll(shardUnits("fanout-" + FanOut.id(parameterSet), FanOut.substitute(configs, parameterSet), renderedShards));
+        }
+
+        return units;
+    }
+
+    private static List<SyncUnit> shardUnits(String name, List<Map<String, Object>> configs, int shards) {
+        List<List<Map<String, Object>>> shardConfigs = SyncShards.split(configs, shards);
+        if (shardConfigs.size() == 1) {
+            return List.of(new SyncUnit(name, shardConfigs.get(0)));
+        }
+
+        List<SyncUnit> units = new ArrayList<>();
+        for (int i = 0; i < shardConfigs.size(); i++) {
+            units.add(new SyncUnit(name == null ? "shard" + i : name + "-shard" + i, shardConfigs.get(i)));
         }
+        return units;
+    }
 
-        Map<String, Object> backendOptionsObject = getBackendOptionObject();
-        List<Map<String, Object>> configs = readConfigs(runContext, this.configs, backendOptionsObject);
-        if (runContext.render(incremental).as(Boolean.class).orElseThrow()) {
-            configs.add(getIncrementalSqliteDestination());
+    private static List<SyncUnit> restrictToFailedTables(RunContext runContext, List<SyncUnit> units, Map<String, List<String>> previouslyFailed) {
+        if (previouslyFailed.isEmpty()) {
+            return units;
         }
 
+        List<SyncUnit> restricted = units.stream()
+            .map(unit -> new SyncUnit(unit.name(), FailedTables.restrict(unit.configs(), previouslyFailed)))
+            .filter(unit -> unit.configs().stream().anyMatch(config -> Objects.equals(config.get("kind"), "source")))
+            .toList();
 
-        List<String> cmds = new ArrayList<>(List.of("sync"));
-        configs.forEach(throwConsumer(config -> {
-            File confFile = new File(workingDirectory + "/" + IdUtils.create() + ".yml");
-            OBJECT_MAPPER.writeValue(confFile, config);
-            cmds.add(confFile.getName());
-        }));
+        if (restricted.isEmpty()) {
+            runContext.logger().warn("None of the tables that failed in a previous attempt are part of the configurations anymore, syncing every table");
+            return units;
+        }
 
-        commands = commands.withCommands(
-            cmds
+        runContext.logger().info("Syncing again the tables that failed in a previous attempt: {}", previouslyFailed);
+        return restricted;
+    }
+
+    private AutoTune autoTune(RunContext runContext, int concurrency, String nativeBinary) throws IllegalVariableEvaluationException {
+        if (!runContext.render(this.autoTune).as(Boolean.class).orElse(false)) {
+            return null;
+        }
+
+        return AutoTune.of(this.taskRunner(nativeBinary), nativeBinary == null ? this.getDocker() : null).divide(concurrency);
+    }
+
+    private static Map<String, String> withAutoTuneEnv(Map<String, String> env, AutoTune autoTune) {
+        Map<String, String> results = new HashMap<>(env == null ? Map.of() : env);
+        autoTune.env().forEach(results::putIfAbsent);
+        return results;
+    }
+
+    private ConcurrencyTuner concurrencyTuner(RunContext runContext) throws IllegalVariableEvaluationException {
+        if (!runContext.render(this.adaptiveConcurrency).as(Boolean.class).orElse(false)) {
+            return null;
+        }
+
+        return new ConcurrencyTuner(
+            runContext,
+            runContext.render(this.minConcurrency).as(Long.class).orElseThrow(),
+            runContext.render(this.maxConcurrency).as(Long.class).orElseThrow()
         );
+    }
+
+    /**
+     * Run the CloudQuery process of every unit, {@code concurrency} at a time.
+     * <p>
+     * Every process runs until the end so each one persists its incremental state. Failures of CloudQuery are returned
+     * in the outputs, other failures are thrown once every process is done.
+     */
+    private List<ProcessOutput> runProcesses(RunContext runContext, CommandsWrapper commands, List<SyncUnit> units, int concurrency, ProcessContext context) throws Exception {
+        if (units.size() == 1) {
+            return List.of(this.runProcess(runContext, commands, units.get(0).configs(), units.get(0).name(), context));
+        }
+
+        runContext.logger().info("Running {} CloudQuery processes, {} at a time", units.size(), concurrency);
+
+        // the processes share the working directory, so the namespace and input files are copied once by a short
+        // command rather than by every process, which would rewrite them while the others read them
+        if (this.namespaceFiles != null || this.inputFiles != null) {
+            commands.withCommands(cloudqueryCommand(context.nativeBinary(), List.of("--version"))).run();
+        }
+        CommandsWrapper processCommands = commands.withNamespaceFiles(null).withInputFiles(null);
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<ProcessOutput>> futures = new ArrayList<>();
+            for (SyncUnit unit : units) {
+                futures.add(executor.submit(() -> this.runProcess(runContext, processCommands, unit.configs(), unit.name(), context)));
+            }
+
+            List<ProcessOutput> outputs = new ArrayList<>();
+            Exception failure = null;
+            for (Future<ProcessOutput> future : futures) {
+                try {
+                    outputs.add(future.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception cause ? cause : e;
+                    }
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+
+            return outputs;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Keep the failed tables for the next attempt, or forget the failures of previous attempts.
+     *
+     * @return whether any table failed
+     */
+    private static boolean saveFailedTables(RunContext runContext, FailedTables failedTables, Map<String, TableStatus> tableStatuses, Map<String, String> tableSources) throws Exception {
+        Map<String, List<String>> failed = FailedTables.bySource(tableStatuses, tableSources);
+        if (failed.isEmpty()) {
+            failedTables.clear();
+            return false;
+        }
+
+        failedTables.save(failed);
+        runContext.logger().error("CloudQuery failed to sync the tables {}, retrying the task will only sync these tables again",
+            failed.values().stream().flatMap(List::stream).sorted().toList());
+        return true;
+    }
+
+    /**
+     * Record the statistics of each tuned source, aggregated over the processes syncing it. Processes skipped because of
+     * {@link #maxDuration} are left out, their empty statistics would read as a fast source.
+     */
+    private static void recordStatistics(ConcurrencyTuner tuner, List<SyncUnit> units, List<ProcessOutput> outputs) throws IOException {
+        Map<String, Long> concurrencies = new HashMap<>();
+        Map<String, Long> durations = new HashMap<>();
+        Map<String, Long> rows = new HashMap<>();
+        Map<String, Long> rateLimitWarnings = new HashMap<>();
+
+        for (int i = 0; i < units.size(); i++) {
+            ProcessOutput output = outputs.get(i);
+            if (output.skipped()) {
+                continue;
+            }
+
+            for (Map<String, Object> config : units.get(i).configs()) {
+                if (!Objects.equals(config.get("kind"), "source")
+                    || !(config.get("spec") instanceof Map<?, ?> spec)
+                    || !(spec.get("path") instanceof String path)
+                    || AutoTune.concurrencyKey(path) == null
+                    || !(spec.get("spec") instanceof Map<?, ?> pluginSpec)
+                    || !(pluginSpec.get(AutoTune.concurrencyKey(path)) instanceof Number concurrency)) {
+                    continue;
+                }
 
-        ScriptOutput run = commands.run();
-        try (FileInputStream fis = new FileInputStream(incrementalDBFile)) {
-            runContext.stateStore().putState(
-                CLOUD_QUERY_STATE,
-                DB_FILENAME,
-                runContext.storage().getTaskStorageContext().map(StorageContext.Task::getTaskRunValue).orElse(null),
-                fis.readAllBytes()
+                String name = (String) spec.get("name");
+                concurrencies.put(name, concurrency.longValue());
+                durations.merge(name, output.summary().getDuration().toMillis(), Math::max);
+                rows.merge(name, output.logConsumer().getSourceResources().getOrDefault(name, 0L), Long::sum);
+                rateLimitWarnings.merge(name, output.logConsumer().getSourceRateLimitWarnings().getOrDefault(name, 0L), Long::sum);
+            }
+        }
+
+        for (Map.Entry<String, Long> entry : concurrencies.entrySet()) {
+            tuner.record(entry.getKey(), entry.getValue(), durations.get(entry.getKey()), rows.get(entry.getKey()), rateLimitWarnings.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * Run one CloudQuery process.
+     *
+     * @param processName {@code null} when the sync runs a single process, otherwise a name used to isolate the CloudQuery
+     *                  directory, log file and incremental database of the process inside the shared working directory
+     */
+    private ProcessOutput runProcess(RunContext runContext, CommandsWrapper commands, List<Map<String, Object>> processConfigs, String processName, ProcessContext context) throws Exception {
+        Path workingDirectory = commands.getWorkingDirectory();
+        Instant deadline = context.deadline();
+
+        if (deadline != null && !Instant.now().isBefore(deadline)) {
+            // queued behind other processes for the whole time box
+            runContext.logger().warn("Skipping CloudQuery process {}, 'maxDuration' is already reached", processName);
+            return new ProcessOutput(skippedScriptOutput(), SyncSummary.builder().tables(Map.of()).duration(Duration.ZERO).build(), new CloudQueryLogConsumer(runContext), false, Map.of(), null, true);
+        }
+
+        boolean renderedIncremental = runContext.render(incremental).as(Boolean.class).orElseThrow();
+        IncrementalBackend backend = runContext.render(this.incrementalBackend).as(IncrementalBackend.class).orElseThrow();
+
+        String dbFilename = processName == null ? DB_FILENAME : DB_FILENAME.replace(".sqlite", "-" + processName + ".sqlite");
+        Path incrementalDBFile = workingDirectory.resolve(dbFilename);
+        IncrementalStateStore stateStore = null;
+        KvCursorStore kvCursorStore = null;
+        AtomicReference<String> fingerprint = new AtomicReference<>();
+        if (renderedIncremental && backend == IncrementalBackend.KV_STORE) {
+            kvCursorStore = new KvCursorStore(runContext, INCREMENTAL_TABLE_NAME, dbFilename);
+            kvCursorStore.restore(incrementalDBFile);
+        } else if (renderedIncremental && backend == IncrementalBackend.STATE_STORE) {
+            Long stateCacheSize = runContext.render(this.stateCacheSize).as(Long.class).orElse(0L);
+            stateStore = new IncrementalStateStore(
+                runContext,
+                dbFilename,
+                stateCacheSize > 0 ? new StateCache(StateCache.DEFAULT_DIRECTORY, stateCacheSize) : null
             );
+            fingerprint.set(stateStore.download(incrementalDBFile));
+        }
+
+        List<Map<String, Object>> configs = this.withIncrementalBackend(runContext, processConfigs, dbFilename);
+
+        Optional<InternalStorageFormat> storageFormat = runContext.render(this.internalStorageFormat).as(InternalStorageFormat.class);
+        String tablesDirectory = processName == null ? "kestra-tables" : "kestra-tables-" + processName;
+        boolean filePerTable = runContext.render(this.internalStorageFilePerTable).as(Boolean.class).orElse(false);
+        storageFormat.ifPresent(format -> InternalStorageDestination.inject(configs, tablesDirectory, format, filePerTable));
+
+        PluginMirror.rewrite(configs, context.mirroredPlugins());
+
+        // JSON logs on the console are parsed line by line by CloudQueryLogConsumer to report per-table metrics
+        List<String> cmds = new ArrayList<>(List.of("sync", "--log-format", "json", "--log-console"));
+        String cqDirectory = PluginCache.DEFAULT_CQ_DIRECTORY;
+        String summaryFilename = "summary.json";
+        if (processName != null) {
+            cqDirectory = ".cq-" + processName;
+            summaryFilename = "summary-" + processName + ".json";
+            cmds.addAll(List.of("--cq-dir", cqDirectory, "--log-file-name", "cloudquery-" + processName + ".log"));
+        }
+        if (runContext.render(this.summaryFile).as(Boolean.class).orElse(false)) {
+            cmds.addAll(List.of("--summary-location", summaryFilename));
+        }
+        List<String> configFiles = writeConfigs(workingDirectory, configs);
+        cmds.addAll(configFiles);
+
+        Path stoppedMarker = workingDirectory.resolve(".cloudquery-stopped" + (processName == null ? "" : "-" + processName));
+        if (deadline != null) {
+            cmds = TimeBox.wrap(Objects.requireNonNullElse(context.nativeBinary(), CLOUDQUERY_BINARY), cmds, Duration.between(Instant.now(), deadline), workingDirectory.relativize(stoppedMarker).toString());
+        } else {
+            cmds = cloudqueryCommand(context.nativeBinary(), cmds);
+        }
+
+        StateCheckpointer checkpointer = null;
+        Optional<Duration> interval = runContext.render(this.checkpointInterval).as(Duration.class);
+        if (interval.isPresent() && kvCursorStore != null) {
+            KvCursorStore store = kvCursorStore;
+            checkpointer = new StateCheckpointer(runContext, incrementalDBFile, interval.get(), snapshot -> store.persist(snapshot) > 0);
+        } else if (interval.isPresent() && stateStore != null) {
+            IncrementalStateStore store = stateStore;
+            checkpointer = new StateCheckpointer(runContext, incrementalDBFile, interval.get(), snapshot -> {
+                String snapshotFingerprint = IncrementalStateStore.fingerprint(snapshot);
+                if (snapshotFingerprint.equals(fingerprint.get())) {
+                    return false;
+                }
+
+                store.upload(snapshot);
+                fingerprint.set(snapshotFingerprint);
+                Metrics.emit(runContext, Counter.of("state.checkpoints", 1));
+                return true;
+            });
+        }
+
+        Instant start = Instant.now();
+        CloudQueryLogConsumer logConsumer = new CloudQueryLogConsumer(runContext);
+        List<PluginReference> plugins = PluginReference.of(configs);
+        ScriptOutput run = null;
+        Exception failure = null;
+        try {
+            if (processName == null) {
+                run = this.runWithPluginCache(runContext, commands.withCommands(cmds).withLogConsumer(logConsumer), plugins, cqDirectory);
+            } else {
+                // the processes of the sync share the plugins, installed once through the plugin cache
+                List<String> install = new ArrayList<>(List.of("plugin", "install", "--cq-dir", PluginCache.DEFAULT_CQ_DIRECTORY));
+                install.addAll(configFiles);
+                String binary = context.deadline() == null ? context.nativeBinary() : Objects.requireNonNullElse(context.nativeBinary(), CLOUDQUERY_BINARY);
+                context.sharedPlugins().install(plugins, cqDirectory, () ->
+                    this.runWithPluginCache(runContext, commands.withCommands(cloudqueryCommand(binary, install)), plugins, PluginCache.DEFAULT_CQ_DIRECTORY)
+                );
+
+                run = commands.withCommands(cmds).withLogConsumer(logConsumer).run();
+            }
+        } catch (Exception e) {
+            failure = e;
+        } finally {
+            if (checkpointer != null) {
+                checkpointer.close();
+            }
         }
-        return run;
+        SyncSummary summary = SyncSummary.read(
+            workingDirectory.resolve(summaryFilename),
+            logConsumer.getTableResources(),
+            Duration.between(start, Instant.now())
+        );
+
+        if (failure != null) {
+            // the logs are still needed for the statistics of the sources, the failure is thrown once every process is done
+            return new ProcessOutput(null, summary, logConsumer, false, Map.of(), failure, false);
+        }
+
+        if (kvCursorStore != null) {
+            int updatedCursors = kvCursorStore.persist(incrementalDBFile);
+            Metrics.emit(runContext, Counter.of("state.changed", updatedCursors > 0 ? 1 : 0));
+            Metrics.emit(runContext, Counter.of("state.updated.cursors", updatedCursors));
+        } else if (stateStore != null) {
+            // quiet sources or syncs failing early leave the cursors untouched, no need to upload the same state again
+            boolean stateChanged = !fingerprint.get().equals(IncrementalStateStore.fingerprint(incrementalDBFile));
+            long uploadedBytes = stateChanged ? stateStore.upload(incrementalDBFile) : 0L;
+            Metrics.emit(runContext, Counter.of("state.changed", stateChanged ? 1 : 0));
+            Metrics.emit(runContext, Counter.of("state.uploaded.bytes", uploadedBytes));
+        }
+
+        Map<String, List<URI>> tableFiles = storageFormat.isPresent() ?
+            InternalStorageDestination.upload(runContext, workingDirectory.resolve(tablesDirectory), processName) :
+            Map.of();
+
+        boolean completed = !Files.exists(stoppedMarker);
+        if (!completed) {
+            runContext.logger().warn("CloudQuery was stopped after reaching 'maxDuration', the sync is not completed");
+        }
+
+        return new ProcessOutput(run, summary, logConsumer, completed, tableFiles, null, false);
     }
 
-    private Map<String, Object> getIncrementalSqliteDestination() {
-        return Map.of(
+    private static ScriptOutput skippedScriptOutput() {
+        return ScriptOutput.builder().exitCode(0).vars(new HashMap<>()).outputFiles(new HashMap<>()).build();
+    }
+
+    /**
+     * Copy the configurations of a process, pointing the sources to the backend storing their incremental indexes
+     * and adding the bundled SQLite destination when the indexes are not stored in one of the sync destinations.
+     *
+     * @param dbFilename the database of the bundled SQLite destination, relative to the working directory
+     */
+    List<Map<String, Object>> withIncrementalBackend(RunContext runContext, List<Map<String, Object>> processConfigs, String dbFilename) throws IllegalVariableEvaluationException {
+        // the backend options and the plugin mirror replace the spec of the configurations, keep the ones of the unit untouched
+        List<Map<String, Object>> configs = new ArrayList<>();
+        processConfigs.forEach(config -> configs.add(new HashMap<>(config)));
+
+        if (!runContext.render(this.incremental).as(Boolean.class).orElseThrow()) {
+            return configs;
+        }
+
+        if (runContext.render(this.incrementalBackend).as(IncrementalBackend.class).orElseThrow() == IncrementalBackend.DESTINATION) {
+            injectBackendOptions(configs, getBackendOptionObject(incrementalDestinationName(runContext, configs)));
+        } else {
+            injectBackendOptions(configs, getBackendOptionObject(INCREMENTAL_DESTINATION_NAME));
+            configs.add(getIncrementalSqliteDestination(dbFilename));
+        }
+
+        return configs;
+    }
+
+    private Map<String, Object> getIncrementalSqliteDestination(String dbFilename) {
+        return new HashMap<>(Map.of(
             "kind", "destination",
             "spec", Map.of(
-                "name", "kestra_incremental_db",
+                "name", INCREMENTAL_DESTINATION_NAME,
                 "path", "cloudquery/sqlite",
                 "version", "v2.4.10",
                 "spec", Map.of(
-                    "connection_string", DB_FILENAME
+                    "connection_string", dbFilename
                 )
             )
-        );
+        ));
     }
 
-    private Map<String, Object> getBackendOptionObject() {
+    private Map<String, Object> getBackendOptionObject(String destination) {
         return Map.of(
-            "table_name", "kestra_incremental_table",
-            "connection", "@@plugins.kestra_incremental_db.connection"
+            "table_name", INCREMENTAL_TABLE_NAME,
+            "connection", "@@plugins." + destination + ".connection"
         );
     }
 
     @SuppressWarnings("unchecked")
-    private List<Map<String, Object>> readConfigs(RunContext runContext, List<Object> configurations, Map<String, Object> backendOptionsObject) throws IllegalVariableEvaluationException, URISyntaxException, IOException {
-        List<Map<String, Object>> results = new ArrayList<>(configurations.size());
-        for (Object config : configurations) {
-            Map<String, Object> result;
-            if (config instanceof String) {
-                URI from = new URI(runContext.render((String) config));
-                try (BufferedReader inputStream = new BufferedReader(new InputStreamReader(runContext.storage().getFile(from)))) {
-                    result = OBJECT_MAPPER.readValue(inputStream, new TypeReference<>() {
-                    });
-                }
-            } else if (config instanceof Map) {
-                result = new HashMap<>((Map<String, Object>) config);
-            } else {
-                throw new IllegalVariableEvaluationException("Invalid configs type '" + configs.getClass() + "'");
-            }
+    private String incrementalDestinationName(RunContext runContext, List<Map<String, Object>> configs) throws IllegalVariableEvaluationException {
+        Optional<String> name = runContext.render(this.incrementalDestination).as(String.class);
+        if (name.isPresent()) {
+            return name.get();
+        }
 
+        List<String> destinations = configs.stream()
+            .filter(config -> Objects.equals(config.get("kind"), "destination") && config.get("spec") instanceof Map)
+            .map(config -> (String) ((Map<String, Object>) config.get("spec")).get("name"))
+            .toList();
 
-            if (runContext.render(incremental).as(Boolean.class).orElseThrow() && Objects.equals(result.get("kind"), "source")) {
-                if (result.containsKey("spec")) {
-                    Map<String, Object> spec = (Map<String, Object>) result.get("spec");
-                    if (!spec.containsKey("backend_options")) {
-                        spec = new HashMap<>((Map<String, Object>) result.get("spec"));
-                        spec.put("backend_options", backendOptionsObject);
-                        result.put("spec", spec);
-                    }
+        if (destinations.size() != 1) {
+            throw new IllegalArgumentException("'incrementalDestination' is required when there is not exactly one destination, found " + destinations);
+        }
+
+        return destinations.get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void injectBackendOptions(List<Map<String, Object>> configs, Map<String, Object> backendOptionsObject) {
+        for (Map<String, Object> result : configs) {
+            if (Objects.equals(result.get("kind"), "source") && result.containsKey("spec")) {
+                Map<String, Object> spec = (Map<String, Object>) result.get("spec");
+                if (!spec.containsKey("backend_options")) {
+                    spec = new HashMap<>(spec);
+                    spec.put("backend_options", backendOptionsObject);
+                    result.put("spec", spec);
                 }
             }
-            results.add(result);
         }
+    }
 
-        return results;
+    private record SyncUnit(String name, List<Map<String, Object>> configs) {
+    }
+
+    /**
+     * The settings shared by every CloudQuery process of a sync.
+     *
+     * @param deadline when to interrupt CloudQuery, or {@code null} to let it run until the end
+     * @param nativeBinary the CloudQuery CLI run as a plain process, or {@code null} when running in a container
+     */
+    private record ProcessContext(Map<String, String> mirroredPlugins, Instant deadline, String nativeBinary, SharedPlugins sharedPlugins) {
+    }
+
+    /**
+     * @param failure the failure of CloudQuery, {@code null} when it succeeded
+     * @param skipped whether CloudQuery didn't run because {@link #maxDuration} was already reached
+     */
+    private record ProcessOutput(ScriptOutput script, SyncSummary summary, CloudQueryLogConsumer logConsumer, boolean completed, Map<String, List<URI>> tableFiles, Exception failure, boolean skipped) {
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(title = "The exit code of the CloudQuery processes.")
+        private final int exitCode;
+
+        @Schema(title = "The value extracted from the output of the CloudQuery processes.")
+        private final Map<String, Object> vars;
+
+        @Schema(title = "The output files' URIs in Kestra's internal storage.")
+        @PluginProperty(additionalProperties = URI.class)
+        private final Map<String, URI> outputFiles;
+
+        @Schema(title = "The summary of the sync.")
+        private final SyncSummary summary;
+
+        @Schema(
+            title = "The status of each table synced.",
+            description = "A table is `FAILED` when CloudQuery reported errors while syncing it."
+        )
+        private final Map<String, TableStatus> tableStatuses;
+
+        @Schema(
+            title = "The URIs of the files of each table in Kestra internal storage, when using `internalStorageFormat`."
+        )
+        private final Map<String, List<URI>> tableFiles;
+
+        @Schema(
+            title = "Whether the sync ran until the end.",
+            description = "`false` when CloudQuery was stopped after reaching `maxDuration`."
+        )
+        private final Boolean completed;
+
+        @JsonIgnore
+        private final ScriptOutput scriptOutput;
+
+        @JsonIgnore
+        private final boolean tablesFailed;
+
+        static Output of(ScriptOutput scriptOutput, SyncSummary summary, boolean completed, Map<String, TableStatus> tableStatuses, Map<String, List<URI>> tableFiles, boolean tablesFailed) {
+            return Output.builder()
+                .exitCode(scriptOutput.getExitCode())
+                .vars(scriptOutput.getVars())
+                .outputFiles(scriptOutput.getOutputFiles())
+                .summary(summary)
+                .completed(completed)
+                .tableStatuses(new TreeMap<>(tableStatuses))
+                .tableFiles(new TreeMap<>(tableFiles))
+                .scriptOutput(scriptOutput)
+                .tablesFailed(tablesFailed)
+                .build();
+        }
+
+        @Override
+        public Optional<State.Type> finalState() {
+            // failing through the state rather than an exception keeps the outputs, so the status of each table is available
+            return this.tablesFailed ? Optional.of(State.Type.FAILED) : this.scriptOutput.finalState();
+        }
+    }
+
+    public enum InternalStorageFormat {
+        PARQUET,
+        CSV,
+        JSON
+    }
+
+    public enum TableStatus {
+        SUCCESS,
+        FAILED
+    }
+
+    public enum IncrementalBackend {
+        STATE_STORE,
+        KV_STORE,
+        DESTINATION
     }
-}
+}
\ No newline at end of file
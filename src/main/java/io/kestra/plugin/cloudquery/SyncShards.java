@@ -0,0 +1,110 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.plugin.scripts.exec.scripts.models.ScriptOutput;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Splits a sync into several CloudQuery processes, each syncing a disjoint subset of the source tables.
+ */
+class SyncShards {
+    private SyncShards() {
+    }
+
+    /**
+     * Split the tables of every source into {@code shards} groups, assigned round-robin in name order so the same table
+     * always lands in the same shard as long as the table list and the number of shards don't change.
+     * <p>
+     * Destinations are part of every shard. Sources without an explicit {@code tables} list can't be split and are
+     * synced by the first shard, shards left without any source are dropped.
+     */
+    @SuppressWarnings("unchecked")
+    static List<List<Map<String, Object>>> split(List<Map<String, Object>> configs, int shards) {
+        List<List<Map<String, Object>>> results = new ArrayList<>();
+        for (int i = 0; i < Math.max(shards, 1); i++) {
+            results.add(new ArrayList<>());
+        }
+
+        boolean[] hasSource = new boolean[results.size()];
+        int next = 0;
+        for (Map<String, Object> config : configs) {
+            if (!Objects.equals(config.get("kind"), "source")) {
+                results.forEach(shard -> shard.add(new HashMap<>(config)));
+                continue;
+            }
+
+            Map<String, Object> spec = config.get("spec") instanceof Map<?, ?> map ? (Map<String, Object>) map : null;
+            if (results.size() == 1 || spec == null || !(spec.get("tables") instanceof List<?> tables)) {
+                results.get(0).add(new HashMap<>(config));
+                hasSource[0] = true;
+                continue;
+            }
+
+            List<List<Object>> groups = new ArrayList<>();
+            results.forEach(shard -> groups.add(new ArrayList<>()));
+            for (Object table : tables.stream().distinct().sorted((a, b) -> a.toString().compareTo(b.toString())).toList()) {
+                groups.get(next++ % results.size()).add(table);
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                if (groups.get(i).isEmpty()) {
+                    continue;
+                }
+
+                Map<String, Object> shardSpec = new HashMap<>(spec);
+                shardSpec.put("tables", groups.get(i));
+                Map<String, Object> shardConfig = new HashMap<>(config);
+                shardConfig.put("spec", shardSpec);
+
+                results.get(i).add(shardConfig);
+                hasSource[i] = true;
+            }
+        }
+
+        List<List<Map<String, Object>>> nonEmpty = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (hasSource[i] || i == 0) {
+                nonEmpty.add(results.get(i));
+            }
+        }
+
+        return nonEmpty;
+    }
+
+    /**
+     * Merge the outputs of every CloudQuery process into one.
+     */
+    static ScriptOutput merge(List<ScriptOutput> outputs) {
+        Map<String, Object> vars = new HashMap<>();
+        Map<String, URI> outputFiles = new HashMap<>();
+        int exitCode = 0;
+        int stdOutLineCount = 0;
+        int stdErrLineCount = 0;
+
+        for (ScriptOutput output : outputs) {
+            if (output.getVars() != null) {
+                vars.putAll(output.getVars());
+            }
+            if (output.getOutputFiles() != null) {
+                outputFiles.putAll(output.getOutputFiles());
+            }
+            exitCode = Math.max(exitCode, output.getExitCode());
+            stdOutLineCount += output.getStdOutLineCount();
+            stdErrLineCount += output.getStdErrLineCount();
+        }
+
+        return ScriptOutput.builder()
+            .exitCode(exitCode)
+            .vars(vars)
+            .outputFiles(outputFiles)
+            .stdOutLineCount(stdOutLineCount)
+            .stdErrLineCount(stdErrLineCount)
+            .warningOnStdErr(outputs.get(0).getWarningOnStdErr())
+            .build();
+    }
+}
@@ -0,0 +1,105 @@
+package io.kestra.plugin.cloudquery;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.kestra.core.serializers.JacksonMapper;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Summary of a sync, read from the file written by CloudQuery with {@code --summary-location} (one JSON line per
+ * source and destination pair, each repeating the totals of the source) when the task asks for it, completed with the
+ * per-table row counts reported in the logs.
+ */
+@Builder
+@Getter
+public class SyncSummary {
+    @Schema(title = "The total number of rows synced.")
+    private final long rows;
+
+    @Schema(title = "The number of rows synced by table.")
+    private final Map<String, Long> tables;
+
+    @Schema(title = "The number of errors reported by the sources and destinations, only counted with `summaryFile`.")
+    private final long errors;
+
+    @Schema(title = "The number of warnings reported by the sources and destinations, only counted with `summaryFile`.")
+    private final long warnings;
+
+    @Schema(title = "The duration of the sync.")
+    private final Duration duration;
+
+    static SyncSummary read(Path summaryFile, Map<String, Long> tables, Duration duration) throws IOException {
+        long rows = 0;
+        long errors = 0;
+        long warnings = 0;
+        boolean found = false;
+
+        if (Files.exists(summaryFile)) {
+            // every line of a source repeats its totals, they are only counted once
+            Map<String, JsonNode> sources = new HashMap<>();
+
+            try (BufferedReader reader = Files.newBufferedReader(summaryFile)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+
+                    JsonNode summary = JacksonMapper.ofJson().readTree(line);
+                    sources.putIfAbsent(summary.path("source_name").asText(), summary);
+                    errors += summary.path("destination_errors").asLong();
+                    warnings += summary.path("destination_warnings").asLong();
+                    found = true;
+                }
+            }
+
+            for (JsonNode source : sources.values()) {
+                rows += source.path("resources").asLong();
+                errors += source.path("source_errors").asLong();
+                warnings += source.path("source_warnings").asLong();
+            }
+        }
+
+        return SyncSummary.builder()
+            // without summaryFile, fall back to the rows reported in the logs
+            .rows(found ? rows : tables.values().stream().mapToLong(Long::longValue).sum())
+            .tables(new TreeMap<>(tables))
+            .errors(errors)
+            .warnings(warnings)
+            .duration(duration)
+            .build();
+    }
+
+    static SyncSummary merge(List<SyncSummary> summaries, Duration duration) {
+        Map<String, Long> tables = new TreeMap<>();
+        long rows = 0;
+        long errors = 0;
+        long warnings = 0;
+
+        for (SyncSummary summary : summaries) {
+            summary.getTables().forEach((table, count) -> tables.merge(table, count, Long::sum));
+            rows += summary.getRows();
+            errors += summary.getErrors();
+            warnings += summary.getWarnings();
+        }
+
+        return SyncSummary.builder()
+            .rows(rows)
+            .tables(tables)
+            .errors(errors)
+            .warnings(warnings)
+            .duration(duration)
+            .build();
+    }
+}
@@ -0,0 +1,157 @@
+package io.kestra.plugin.cloudquery;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.serializers.JacksonMapper;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Syncs the tables of a source at different frequencies.
+ * <p>
+ * Each tier is a table pattern (with {@code *} and {@code ?} wildcards) and a refresh interval. The entries of the
+ * {@code tables} list of a source matching a tier are only synced when the tier is due, the other entries are always
+ * synced. The last sync of each tier of each source is kept in the state store.
+ */
+class TableTiers {
+    static final String STATE_NAME = "CloudQueryTableTiers";
+
+    private static final ObjectMapper MAPPER = JacksonMapper.ofJson();
+    private static final String KEY = "tiers";
+    // scheduled executions don't start exactly on time, a tier is due slightly before its interval fully elapsed
+    private static final double GRACE = 0.05;
+
+    private final RunContext runContext;
+    private final Map<String, Duration> intervals;
+    private final String taskRunValue;
+    private final Set<String> synced = new HashSet<>();
+
+    private Map<String, String> lastSyncs;
+
+    TableTiers(RunContext runContext, Map<String, Duration> intervals) {
+        this.runContext = runContext;
+        this.intervals = intervals;
+        this.taskRunValue = TaskIdentity.of(runContext).taskRunValue();
+    }
+
+    /**
+     * Remove from the sources the tables of the tiers that are not due, and the sources left without tables.
+     */
+    @SuppressWarnings("unchecked")
+    List<Map<String, Object>> due(List<Map<String, Object>> configs, Instant now) throws IOException {
+        this.lastSyncs = this.load();
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Map<String, Object> config : configs) {
+            if (!Objects.equals(config.get("kind"), "source")
+                || !(config.get("spec") instanceof Map<?, ?> spec)
+                || !(spec.get("tables") instanceof List<?> tables)) {
+                results.add(config);
+                continue;
+            }
+
+            String source = (String) spec.get("name");
+            List<Object> dueTables = new ArrayList<>();
+            for (Object table : tables) {
+                String tier = this.tier(table.toString());
+                if (tier == null) {
+                    dueTables.add(table);
+                } else if (this.isDue(source, tier, now)) {
+                    dueTables.add(table);
+                    this.synced.add(key(source, tier));
+                }
+            }
+
+            if (dueTables.isEmpty()) {
+                this.runContext.logger().info("No table of source '{}' is due", source);
+                continue;
+            }
+
+            Map<String, Object> dueSpec = new HashMap<>((Map<String, Object>) spec);
+            dueSpec.put("tables", dueTables);
+            Map<String, Object> dueConfig = new HashMap<>(config);
+            dueConfig.put("spec", dueSpec);
+            results.add(dueConfig);
+        }
+
+        return results;
+    }
+
+    /**
+     * Record that the tiers selected by {@link #due(List, Instant)} synced at {@code now}.
+     */
+    void save(Instant now) throws IOException {
+        if (this.synced.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> updated = new HashMap<>(this.lastSyncs);
+        this.synced.forEach(key -> updated.put(key, now.toString()));
+        this.runContext.stateStore().putState(STATE_NAME, KEY, this.taskRunValue, MAPPER.writeValueAsBytes(updated));
+    }
+
+    /**
+     * The tier of a table: the most specific matching pattern, i.e. the one with the most characters that are not
+     * wildcards, so that {@code aws_iam_*} wins over {@code aws_*} whatever the order of the patterns.
+     */
+    private String tier(String table) {
+        return this.intervals.keySet().stream()
+            .filter(pattern -> pattern.equals(table) || glob(pattern).matcher(table).matches())
+            .min(Comparator.comparingInt(TableTiers::specificity).reversed().thenComparing(Comparator.naturalOrder()))
+            .orElse(null);
+    }
+
+    private static int specificity(String pattern) {
+        return (int) pattern.chars().filter(c -> c != '*' && c != '?').count();
+    }
+
+    private boolean isDue(String source, String tier, Instant now) {
+        String lastSync = this.lastSyncs.get(key(source, tier));
+        if (lastSync == null) {
+            return true;
+        }
+
+        Duration interval = this.intervals.get(tier);
+        Duration grace = Duration.ofMillis((long) (interval.toMillis() * GRACE));
+        return !Instant.parse(lastSync).plus(interval).minus(grace).isAfter(now);
+    }
+
+    private Map<String, String> load() throws IOException {
+        try (InputStream input = this.runContext.stateStore().getState(STATE_NAME, KEY, this.taskRunValue)) {
+            return MAPPER.readValue(input, new TypeReference<>() {});
+        } catch (FileNotFoundException e) {
+            return new HashMap<>();
+        }
+    }
+
+    private static String key(String source, String tier) {
+        return source + "/" + tier;
+    }
+
+    private static Pattern glob(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            switch (c) {
+                case '*' -> regex.append(".*");
+                case '?' -> regex.append('.');
+                default -> regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,47 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.storages.StorageContext;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Identifies the task run a store or cache keeps its data for, so that they all build their keys the same way.
+ *
+ * @param taskRunValue the value of the task run inside a flowable task, {@code null} otherwise
+ */
+record TaskIdentity(String tenantId, String namespace, String flowId, String taskId, String taskRunValue, String executionId) {
+    @SuppressWarnings("unchecked")
+    static TaskIdentity of(RunContext runContext) {
+        Map<String, Object> variables = runContext.getVariables();
+        Map<String, Object> flow = (Map<String, Object>) variables.getOrDefault("flow", Map.of());
+        Map<String, Object> task = (Map<String, Object>) variables.getOrDefault("task", Map.of());
+        Map<String, Object> execution = (Map<String, Object>) variables.getOrDefault("execution", Map.of());
+
+        return new TaskIdentity(
+            (String) flow.get("tenantId"),
+            (String) flow.get("namespace"),
+            (String) flow.get("id"),
+            (String) task.get("id"),
+            runContext.storage().getTaskStorageContext().map(StorageContext.Task::getTaskRunValue).orElse(null),
+            (String) execution.get("id")
+        );
+    }
+
+    /**
+     * A fixed-length key unique to the task run and {@code parts}, made of characters accepted by every storage.
+     * <p>
+     * The raw values are hashed rather than sanitized and joined, so that different tasks never share a key and the
+     * key of a task is never the start of the key of another one.
+     */
+    String key(String... parts) {
+        String raw = Stream.concat(Stream.of(this.tenantId, this.namespace, this.flowId, this.taskId, this.taskRunValue), Stream.of(parts))
+            .map(part -> Objects.toString(part, ""))
+            .collect(Collectors.joining("\u0000"));
+
+        return Hashes.sha256(raw, 16);
+    }
+}
@@ -0,0 +1,51 @@
+package io.kestra.plugin.cloudquery;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs CloudQuery from a POSIX shell script interrupting it (SIGINT) once a duration elapsed, so that it flushes the
+ * rows and cursors already fetched.
+ * <p>
+ * The script exits successfully when CloudQuery was interrupted, and creates a marker file so the task can tell a
+ * stopped sync from a completed one.
+ */
+class TimeBox {
+    private TimeBox() {
+    }
+
+    /**
+     * @param binary the CloudQuery CLI
+     * @param stoppedMarker the marker file created when CloudQuery is interrupted, relative to the working directory
+     */
+    static List<String> wrap(String binary, List<String> args, Duration duration, String stoppedMarker) {
+        String command = Stream.concat(Stream.of(binary), args.stream())
+            .map(TimeBox::quote)
+            .collect(Collectors.joining(" "));
+        String marker = quote(stoppedMarker);
+
+        // background commands of a non-interactive shell start with SIGINT ignored, CloudQuery installs its own handler
+        // the watchdog kills its sleep when stopped, so no sleep outlives the script when CloudQuery exits on time
+        String script = String.join("\n",
+            command + " &",
+            "pid=$!",
+            "(trap 'kill $sleeper 2>/dev/null; exit 0' TERM; sleep " + Math.max(1, (long) Math.ceil(duration.toMillis() / 1000.0)) + " & sleeper=$!; " +
+                "wait $sleeper && touch " + marker + " && kill -INT $pid) &",
+            "watchdog=$!",
+            "wait $pid",
+            "code=$?",
+            "kill $watchdog 2>/dev/null",
+            "wait $watchdog 2>/dev/null",
+            "if [ -f " + marker + " ]; then exit 0; fi",
+            "exit $code"
+        );
+
+        return List.of("/bin/sh", "-c", script);
+    }
+
+    private static String quote(String arg) {
+        return "'" + arg.replace("'", "'\\''") + "'";
+    }
+}
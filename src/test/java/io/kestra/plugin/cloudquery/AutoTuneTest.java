@@ -0,0 +1,53 @@
+package io.kestra.plugin.cloudquery;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class AutoTuneTest {
+    private static final long MIB = 1024 * 1024;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void apply() {
+        List<Map<String, Object>> configs = new AutoTune(2, 1024 * MIB).apply(List.of(
+            Map.of("kind", "source", "spec", Map.of("name", "aws", "path", "cloudquery/aws", "spec", Map.of("regions", List.of("us-east-1")))),
+            Map.of("kind", "source", "spec", Map.of("name", "hackernews", "path", "cloudquery/hackernews", "spec", Map.of("item_concurrency", 10))),
+            Map.of("kind", "source", "spec", Map.of("name", "other", "path", "someone/other")),
+            Map.of("kind", "destination", "spec", Map.of("name", "postgresql", "path", "cloudquery/postgresql"))
+        ));
+
+        Map<String, Object> aws = (Map<String, Object>) ((Map<String, Object>) configs.get(0).get("spec")).get("spec");
+        assertThat(aws.get("concurrency"), is(1024L));
+        assertThat(aws.get("regions"), is(List.of("us-east-1")));
+
+        Map<String, Object> hackernews = (Map<String, Object>) ((Map<String, Object>) configs.get(1).get("spec")).get("spec");
+        assertThat(hackernews.get("item_concurrency"), is(10));
+
+        assertThat(((Map<String, Object>) configs.get(2).get("spec")).containsKey("spec"), is(false));
+
+        Map<String, Object> postgresql = (Map<String, Object>) ((Map<String, Object>) configs.get(3).get("spec")).get("spec");
+        assertThat(postgresql.get("batch_size_bytes"), is(64 * MIB));
+        assertThat(postgresql.get("batch_size"), is(64 * 1024L));
+    }
+
+    @Test
+    void env() {
+        Map<String, String> env = new AutoTune(3, 4096 * MIB).divide(2).env();
+
+        assertThat(env.get("GOMAXPROCS"), is("2"));
+        assertThat(env.get("GOMEMLIMIT"), is("1843MiB"));
+    }
+
+    @Test
+    void parseBytes() {
+        assertThat(AutoTune.parseBytes("512m"), is(512 * MIB));
+        assertThat(AutoTune.parseBytes("2GB"), is(2048 * MIB));
+        assertThat(AutoTune.parseBytes("1.5GiB"), is(1536 * MIB));
+        assertThat(AutoTune.parseBytes("1024"), is(1024L));
+    }
+}
@@ -0,0 +1,48 @@
+package io.kestra.plugin.cloudquery;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CloudQueryBinaryTest {
+    @Test
+    void asset() {
+        assertThat(CloudQueryBinary.asset("Linux", "amd64"), is("cloudquery_linux_amd64"));
+        assertThat(CloudQueryBinary.asset("Mac OS X", "aarch64"), is("cloudquery_darwin_arm64"));
+        assertThat(CloudQueryBinary.asset("Windows 11", "x86_64"), is("cloudquery_windows_amd64.exe"));
+        assertThrows(IllegalArgumentException.class, () -> CloudQueryBinary.asset("Linux", "s390x"));
+        assertThat(CloudQueryBinary.platform("Mac OS X", "aarch64"), is("darwin_arm64"));
+    }
+
+    @Test
+    void expectedChecksum() {
+        String checksums = """
+            0A1B  cloudquery_linux_amd64
+            2c3d  cloudquery_darwin_arm64
+            """;
+
+        assertThat(CloudQueryBinary.expectedChecksum(checksums, "cloudquery_linux_amd64"), is(Optional.of("0a1b")));
+        assertThat(CloudQueryBinary.expectedChecksum(checksums, "cloudquery_windows_amd64.exe"), is(Optional.empty()));
+    }
+
+    @Test
+    void cached() throws Exception {
+        Path cacheDirectory = Files.createTempDirectory("cli-cache");
+        Path binary = cacheDirectory.resolve("v6.8.0").resolve(CloudQueryBinary.asset(System.getProperty("os.name"), System.getProperty("os.arch")));
+        Files.createDirectories(binary.getParent());
+        Files.writeString(binary, "#!/bin/sh");
+        assertThat(binary.toFile().setExecutable(true), is(true));
+
+        // both version notations resolve to the cached binary, without downloading it
+        CloudQueryBinary cli = new CloudQueryBinary(cacheDirectory, LoggerFactory.getLogger(CloudQueryBinaryTest.class));
+        assertThat(cli.provision("v6.8.0"), is(binary));
+        assertThat(cli.provision("6.8.0"), is(binary));
+    }
+}
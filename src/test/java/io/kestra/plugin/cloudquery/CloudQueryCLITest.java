@@ -11,6 +11,8 @@ import jakarta.inject.Inject;
 import org.junit.jupiter.api.Test;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
@@ -49,4 +51,33 @@ class CloudQueryCLITest {
         assertThat(runOutput.getVars().get("customEnv"), is(envValue));
 
     }
+
+    @Test
+    void pluginCachePerPlatform() throws Exception {
+        Path cacheDirectory = Files.createTempDirectory("plugin-cache");
+        PluginReference aws = new PluginReference("source", "cloudquery/aws", "v22.14.0", "cloudquery");
+        Path workingDirectory = Files.createTempDirectory("working-dir");
+        Path plugins = workingDirectory.resolve(PluginCache.DEFAULT_CQ_DIRECTORY).resolve("plugins");
+        Files.createDirectories(plugins.resolve(aws.relativePath()));
+        Files.writeString(plugins.resolve(aws.relativePath()).resolve("plugin"), "binary");
+
+        // plugins downloaded by a native CLI are kept by OS and architecture, apart from the ones downloaded in containers
+        for (String binary : new String[]{"cloudquery", null}) {
+            CloudQueryCLI task = CloudQueryCLI.builder()
+                .id(IdUtils.create())
+                .type(CloudQueryCLI.class.getName())
+                .commands(List.of("cloudquery --version"))
+                .binary(binary == null ? null : Property.of(binary))
+                .pluginCache(Property.of(true))
+                .pluginCacheDirectory(Property.of(cacheDirectory.toString()))
+                .build();
+            RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+
+            task.pluginCache(runContext).store(plugins);
+        }
+
+        String platform = CloudQueryBinary.platform(System.getProperty("os.name"), System.getProperty("os.arch"));
+        assertThat(Files.isDirectory(cacheDirectory.resolve(platform).resolve(aws.relativePath())), is(true));
+        assertThat(Files.isDirectory(cacheDirectory.resolve(PluginCache.CONTAINER_PLATFORM).resolve(aws.relativePath())), is(true));
+    }
 }
\ No newline at end of file
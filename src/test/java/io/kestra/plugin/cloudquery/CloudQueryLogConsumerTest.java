@@ -0,0 +1,56 @@
+package io.kestra.plugin.cloudquery;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.executions.AbstractMetricEntry;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.serializers.JacksonMapper;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@KestraTest
+class CloudQueryLogConsumerTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void run() {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+
+        CloudQueryLogConsumer consumer = new CloudQueryLogConsumer(runContext);
+        consumer.accept("{\"level\":\"info\",\"module\":\"aws-src\",\"table\":\"aws_s3_buckets\",\"resources\":12,\"errors\":1,\"duration_ms\":1500,\"message\":\"table sync finished\"}", true);
+        consumer.accept("{\"level\":\"info\",\"module\":\"aws-src\",\"table\":\"aws_ec2_instances\",\"resources\":3,\"errors\":0,\"duration_ms\":200,\"message\":\"table sync finished\"}", true);
+        consumer.accept("{\"level\":\"warn\",\"module\":\"aws-src\",\"message\":\"throttled\"}", true);
+        consumer.accept("not json", false);
+
+        assertThat(value(runContext, "table.resources", Map.of("table", "aws_s3_buckets")), is(12.0));
+        assertThat(value(runContext, "table.errors", Map.of("table", "aws_s3_buckets")), is(1.0));
+        assertThat(value(runContext, "table.resources", Map.of("table", "aws_ec2_instances")), is(3.0));
+        assertThat(value(runContext, "resources", Map.of()), is(15.0));
+        assertThat(value(runContext, "errors", Map.of()), is(1.0));
+
+        assertThat(consumer.getStdOutCount(), is(3));
+        assertThat(consumer.getStdErrCount(), is(1));
+    }
+
+    @Test
+    void message() throws Exception {
+        JsonNode entry = JacksonMapper.ofJson().readTree("{\"level\":\"error\",\"time\":\"2024-01-01T00:00:00Z\",\"module\":\"aws-src\",\"table\":\"aws_s3_buckets\",\"error\":\"access denied\",\"message\":\"table resolver finished with error\"}");
+
+        assertThat(CloudQueryLogConsumer.message(entry), is("table resolver finished with error module=aws-src table=aws_s3_buckets error=access denied"));
+    }
+
+    private static double value(RunContext runContext, String name, Map<String, String> tags) {
+        return runContext.metrics().stream()
+            .filter(metric -> metric.getName().equals(name) && metric.getTags().equals(tags))
+            .map(AbstractMetricEntry::getValue)
+            .mapToDouble(value -> ((Number) value).doubleValue())
+            .sum();
+    }
+}
@@ -0,0 +1,51 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@KestraTest
+class ConcurrencyTunerTest {
+    private static final List<Map<String, Object>> CONFIGS = List.of(
+        Map.of("kind", "source", "spec", Map.of("name", "aws", "path", "cloudquery/aws", "spec", Map.of("concurrency", 400))),
+        Map.of("kind", "destination", "spec", Map.of("name", "postgresql", "path", "cloudquery/postgresql"))
+    );
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void run() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+        ConcurrencyTuner tuner = new ConcurrencyTuner(runContext, 100, 1000);
+
+        // first run uses the configuration
+        assertThat(concurrency(tuner.apply(CONFIGS)), is(400L));
+
+        // no throttling, ramp up
+        assertThat(tuner.record("aws", 400, 10_000, 5_000, 0).rowsPerSecond(), is(500.0));
+        assertThat(concurrency(tuner.apply(CONFIGS)), is(500L));
+
+        // throttled, back off
+        tuner.record("aws", 500, 10_000, 5_000, 3);
+        assertThat(concurrency(tuner.apply(CONFIGS)), is(250L));
+
+        // within bounds
+        tuner.record("aws", 900, 10_000, 5_000, 0);
+        assertThat(concurrency(tuner.apply(CONFIGS)), is(1000L));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long concurrency(List<Map<String, Object>> configs) {
+        Map<String, Object> spec = (Map<String, Object>) configs.get(0).get("spec");
+        return ((Number) ((Map<String, Object>) spec.get("spec")).get("concurrency")).longValue();
+    }
+}
@@ -0,0 +1,70 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@KestraTest
+class FailedTablesTest {
+    private static final List<Map<String, Object>> CONFIGS = List.of(
+        Map.of("kind", "source", "spec", Map.of("name", "aws", "path", "cloudquery/aws", "tables", List.of("*"))),
+        Map.of("kind", "source", "spec", Map.of("name", "gcp", "path", "cloudquery/gcp", "tables", List.of("*"))),
+        Map.of("kind", "destination", "spec", Map.of("name", "postgresql", "path", "cloudquery/postgresql"))
+    );
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void saveAndClear() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+
+        FailedTables failedTables = new FailedTables(runContext);
+        assertThat(failedTables.load(), is(Map.of()));
+
+        failedTables.save(Map.of("aws", List.of("aws_iam_users", "aws_s3_buckets")));
+        // the next attempt of the same execution
+        assertThat(new FailedTables(runContext).load(), is(Map.of("aws", List.of("aws_iam_users", "aws_s3_buckets"))));
+
+        failedTables.clear();
+        assertThat(new FailedTables(runContext).load(), is(Map.of()));
+    }
+
+    @Test
+    void bySource() {
+        Map<String, List<String>> failed = FailedTables.bySource(
+            Map.of(
+                "aws_s3_buckets", Sync.TableStatus.FAILED,
+                "aws_iam_users", Sync.TableStatus.FAILED,
+                "aws_ec2_instances", Sync.TableStatus.SUCCESS,
+                "gcp_storage_buckets", Sync.TableStatus.SUCCESS
+            ),
+            Map.of("aws_s3_buckets", "aws", "aws_iam_users", "aws", "aws_ec2_instances", "aws", "gcp_storage_buckets", "gcp")
+        );
+
+        assertThat(failed, is(Map.of("aws", List.of("aws_iam_users", "aws_s3_buckets"))));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void restrict() {
+        List<Map<String, Object>> configs = FailedTables.restrict(CONFIGS, Map.of("aws", List.of("aws_s3_buckets")));
+
+        assertThat(configs.size(), is(2));
+        assertThat(((Map<String, Object>) configs.get(0).get("spec")).get("tables"), is(List.of("aws_s3_buckets")));
+        assertThat(configs.get(1).get("kind"), is("destination"));
+    }
+
+    @Test
+    void unknownSource() {
+        assertThat(FailedTables.restrict(CONFIGS, Map.of("", List.of("aws_s3_buckets"))), is(CONFIGS));
+    }
+}
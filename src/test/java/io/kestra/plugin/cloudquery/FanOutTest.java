@@ -0,0 +1,72 @@
+package io.kestra.plugin.cloudquery;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FanOutTest {
+    private static final List<Map<String, Object>> CONFIGS = List.of(
+        Map.of(
+            "kind", "source",
+            "spec", Map.of(
+                "name", "aws-{{ fanOut.account }}",
+                "path", "cloudquery/aws",
+                "tables", List.of("aws_s3*"),
+                "destinations", List.of("file"),
+                "spec", Map.of("regions", "{{ fanOut.regions }}", "org", Map.of("member_role_name", "{{fanOut.role.name}}"))
+            )
+        ),
+        Map.of(
+            "kind", "destination",
+            "spec", Map.of(
+                "name", "file",
+                "path", "cloudquery/file",
+                "spec", Map.of("path", "{{ fanOut.account }}/{{TABLE}}/{{UUID}}.{{FORMAT}}", "format", "json")
+            )
+        )
+    );
+
+    private static final Map<String, Object> PARAMETER_SET = Map.of(
+        "account", "123456789012",
+        "regions", List.of("us-east-1", "eu-west-1"),
+        "role", Map.of("name", "cloudquery-ro")
+    );
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void substitute() {
+        List<Map<String, Object>> configs = FanOut.substitute(CONFIGS, PARAMETER_SET);
+
+        Map<String, Object> source = (Map<String, Object>) configs.get(0).get("spec");
+        assertThat(source.get("name"), is("aws-123456789012"));
+        assertThat(((Map<String, Object>) source.get("spec")).get("regions"), is(List.of("us-east-1", "eu-west-1")));
+        assertThat(((Map<String, Object>) ((Map<String, Object>) source.get("spec")).get("org")).get("member_role_name"), is("cloudquery-ro"));
+
+        // CloudQuery placeholders of the file destination are kept
+        Map<String, Object> destination = (Map<String, Object>) ((Map<String, Object>) configs.get(1).get("spec")).get("spec");
+        assertThat(destination.get("path"), is("123456789012/{{TABLE}}/{{UUID}}.{{FORMAT}}"));
+    }
+
+    @Test
+    void unknownParameter() {
+        assertThrows(IllegalArgumentException.class, () -> FanOut.substitute(CONFIGS, Map.of("account", "123456789012")));
+    }
+
+    @Test
+    void id() throws Exception {
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("role", Map.of("name", "cloudquery-ro"));
+        reordered.put("regions", List.of("us-east-1", "eu-west-1"));
+        reordered.put("account", "123456789012");
+
+        assertThat(FanOut.id(reordered), is(FanOut.id(PARAMETER_SET)));
+        assertThat(FanOut.id(Map.of("account", "210987654321")), not(FanOut.id(Map.of("account", "123456789012"))));
+    }
+}
@@ -0,0 +1,23 @@
+package io.kestra.plugin.cloudquery;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class HashesTest {
+    private static final String HELLO = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    @Test
+    void sha256() throws Exception {
+        Path file = Files.createTempFile("hashes", ".txt");
+        Files.writeString(file, "hello");
+
+        assertThat(Hashes.sha256("hello"), is(HELLO));
+        assertThat(Hashes.sha256(file), is(HELLO));
+        assertThat(Hashes.sha256("hello", 8), is(HELLO.substring(0, 16)));
+    }
+}
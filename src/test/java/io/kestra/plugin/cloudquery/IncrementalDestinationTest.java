@@ -0,0 +1,76 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.IdUtils;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@KestraTest
+class IncrementalDestinationTest {
+    private static final Map<String, Object> SOURCE = Map.of("kind", "source", "spec", Map.of("name", "aws", "path", "cloudquery/aws", "destinations", List.of("postgresql")));
+    private static final Map<String, Object> POSTGRESQL = Map.of("kind", "destination", "spec", Map.of("name", "postgresql", "path", "cloudquery/postgresql"));
+    private static final Map<String, Object> DUCKDB = Map.of("kind", "destination", "spec", Map.of("name", "duckdb", "path", "cloudquery/duckdb"));
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void onlyDestination() throws Exception {
+        Sync task = task(null);
+        List<Map<String, Object>> configs = task.withIncrementalBackend(runContext(task), List.of(SOURCE, POSTGRESQL), "icrementaldb.sqlite");
+
+        // the cursors are stored in the destination, the bundled SQLite destination is not added
+        assertThat(configs.size(), is(2));
+        assertThat(backendConnection(configs), is("@@plugins.postgresql.connection"));
+    }
+
+    @Test
+    void namedDestination() throws Exception {
+        Sync task = task("duckdb");
+        List<Map<String, Object>> configs = task.withIncrementalBackend(runContext(task), List.of(SOURCE, POSTGRESQL, DUCKDB), "icrementaldb.sqlite");
+
+        assertThat(configs.size(), is(3));
+        assertThat(backendConnection(configs), is("@@plugins.duckdb.connection"));
+    }
+
+    @Test
+    void ambiguousDestination() {
+        Sync task = task(null);
+        RunContext runContext = runContext(task);
+
+        assertThrows(IllegalArgumentException.class, () -> task.withIncrementalBackend(runContext, List.of(SOURCE, POSTGRESQL, DUCKDB), "icrementaldb.sqlite"));
+        assertThrows(IllegalArgumentException.class, () -> task.withIncrementalBackend(runContext, List.of(SOURCE), "icrementaldb.sqlite"));
+    }
+
+    private Sync task(String incrementalDestination) {
+        return Sync.builder()
+            .id(IdUtils.create())
+            .type(Sync.class.getName())
+            .configs(List.of())
+            .incremental(Property.of(true))
+            .incrementalBackend(Property.of(Sync.IncrementalBackend.DESTINATION))
+            .incrementalDestination(incrementalDestination == null ? null : Property.of(incrementalDestination))
+            .build();
+    }
+
+    private RunContext runContext(Sync task) {
+        return TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String backendConnection(List<Map<String, Object>> configs) {
+        Map<String, Object> spec = (Map<String, Object>) configs.get(0).get("spec");
+        return (String) ((Map<String, Object>) spec.get("backend_options")).get("connection");
+    }
+}
@@ -0,0 +1,213 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.serializers.JacksonMapper;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@KestraTest
+class IncrementalStateStoreTest {
+    private static final int CHUNK_SIZE = 1024;
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void roundTrip() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+        IncrementalStateStore stateStore = new IncrementalStateStore(runContext, IncrementalStateStore.DB_FILENAME, null, CHUNK_SIZE);
+
+        byte[] content = new byte[CHUNK_SIZE * 10 + 42];
+        new Random().nextBytes(content);
+        Path source = Files.createTempFile("state", ".sqlite");
+        Files.write(source, content);
+
+        stateStore.upload(source);
+
+        Path target = Files.createTempFile("state", ".sqlite");
+        String fingerprint = stateStore.download(target);
+        assertThat(Files.readAllBytes(target), is(content));
+        assertThat(fingerprint, is(IncrementalStateStore.fingerprint(source)));
+        assertThat(manifest(runContext).getHash(), is(fingerprint));
+
+        // every stored value is bounded by the chunk size (plus gzip framing for incompressible data), never by the size of the database
+        IncrementalStateStore.Manifest manifest = manifest(runContext);
+        assertThat(manifest.getChunks().size(), is(11));
+        assertThat(manifest.getSize(), is((long) content.length));
+        for (String chunkHash : manifest.getChunks()) {
+            try (InputStream chunk = runContext.stateStore().getState(IncrementalStateStore.STATE_NAME, IncrementalStateStore.chunkName(IncrementalStateStore.DB_FILENAME, chunkHash), null)) {
+                assertThat(chunk.readAllBytes().length <= CHUNK_SIZE + 64, is(true));
+            }
+        }
+    }
+
+    @Test
+    void compressed() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+        IncrementalStateStore stateStore = new IncrementalStateStore(runContext, IncrementalStateStore.DB_FILENAME, null, CHUNK_SIZE);
+
+        // SQLite pages are mostly zeroes, they compress very well
+        byte[] content = new byte[CHUNK_SIZE * 4];
+        Path source = Files.createTempFile("state", ".sqlite");
+        Files.write(source, content);
+
+        assertThat(stateStore.upload(source) < content.length / 10, is(true));
+        assertThat(manifest(runContext).getCompression(), is("gzip"));
+
+        Path target = Files.createTempFile("state", ".sqlite");
+        stateStore.download(target);
+        assertThat(Files.readAllBytes(target), is(content));
+    }
+
+    @Test
+    void delta() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+        IncrementalStateStore stateStore = new IncrementalStateStore(runContext, IncrementalStateStore.DB_FILENAME, null, CHUNK_SIZE);
+
+        byte[] content = new byte[CHUNK_SIZE * 10];
+        new Random().nextBytes(content);
+        Path source = Files.createTempFile("state", ".sqlite");
+        Files.write(source, content);
+        long full = stateStore.upload(source);
+
+        // a single modified page only uploads the chunk holding it
+        content[CHUNK_SIZE * 5 + 12]++;
+        Files.write(source, content);
+        long delta = stateStore.upload(source);
+        assertThat(delta < full / 5, is(true));
+
+        Path target = Files.createTempFile("state", ".sqlite");
+        stateStore.download(target);
+        assertThat(Files.readAllBytes(target), is(content));
+    }
+
+    @Test
+    void cached() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+        StateCache cache = new StateCache(Files.createTempDirectory("state-cache"), CHUNK_SIZE * 100);
+        IncrementalStateStore stateStore = new IncrementalStateStore(runContext, IncrementalStateStore.DB_FILENAME, cache, CHUNK_SIZE);
+
+        byte[] content = new byte[CHUNK_SIZE * 3];
+        new Random().nextBytes(content);
+        Path source = Files.createTempFile("state", ".sqlite");
+        Files.write(source, content);
+        stateStore.upload(source);
+
+        // a cache hit doesn't need the chunks anymore
+        IncrementalStateStore.Manifest manifest = manifest(runContext);
+        for (String chunkHash : manifest.getChunks()) {
+            runContext.stateStore().deleteState(IncrementalStateStore.STATE_NAME, IncrementalStateStore.chunkName(IncrementalStateStore.DB_FILENAME, chunkHash), null);
+        }
+
+        Path target = Files.createTempFile("state", ".sqlite");
+        assertThat(stateStore.download(target), is(manifest.getHash()));
+        assertThat(Files.readAllBytes(target), is(content));
+    }
+
+    @Test
+    void interleavedUploads() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+        Path source = Files.createTempFile("state", ".sqlite");
+
+        byte[] first = new byte[CHUNK_SIZE * 4];
+        new Random().nextBytes(first);
+        Files.write(source, first);
+        new IncrementalStateStore(runContext, IncrementalStateStore.DB_FILENAME, null, CHUNK_SIZE).upload(source);
+        IncrementalStateStore.Manifest read = manifest(runContext);
+
+        // another execution replaces the manifest while this one is still downloading the chunks it read
+        byte[] second = new byte[CHUNK_SIZE * 4];
+        new Random().nextBytes(second);
+        Files.write(source, second);
+        new IncrementalStateStore(runContext, IncrementalStateStore.DB_FILENAME, null, CHUNK_SIZE).upload(source);
+        for (String chunkHash : read.getChunks()) {
+            assertThat(exists(runContext, chunkHash), is(true));
+        }
+
+        // they are only removed by the next upload
+        byte[] third = new byte[CHUNK_SIZE * 4];
+        new Random().nextBytes(third);
+        Files.write(source, third);
+        new IncrementalStateStore(runContext, IncrementalStateStore.DB_FILENAME, null, CHUNK_SIZE).upload(source);
+        for (String chunkHash : read.getChunks()) {
+            assertThat(exists(runContext, chunkHash), is(false));
+        }
+
+        Path target = Files.createTempFile("state", ".sqlite");
+        new IncrementalStateStore(runContext, IncrementalStateStore.DB_FILENAME, null, CHUNK_SIZE).download(target);
+        assertThat(Files.readAllBytes(target), is(third));
+    }
+
+    @Test
+    void missingChunk() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+        IncrementalStateStore stateStore = new IncrementalStateStore(runContext, IncrementalStateStore.DB_FILENAME, null, CHUNK_SIZE);
+
+        byte[] content = new byte[CHUNK_SIZE * 4];
+        new Random().nextBytes(content);
+        Path source = Files.createTempFile("state", ".sqlite");
+        Files.write(source, content);
+        stateStore.upload(source);
+
+        String removed = manifest(runContext).getChunks().get(2);
+        runContext.stateStore().deleteState(IncrementalStateStore.STATE_NAME, IncrementalStateStore.chunkName(IncrementalStateStore.DB_FILENAME, removed), null);
+
+        // the sync starts from an empty state instead of failing
+        Path target = Files.createTempFile("state", ".sqlite");
+        IncrementalStateStore restarted = new IncrementalStateStore(runContext, IncrementalStateStore.DB_FILENAME, null, CHUNK_SIZE);
+        assertThat(restarted.download(target), is(IncrementalStateStore.fingerprint(target)));
+        assertThat(Files.size(target), is(0L));
+
+        // and the next upload stores every chunk again, even those the broken manifest listed
+        restarted.upload(source);
+        assertThat(exists(runContext, removed), is(true));
+        new IncrementalStateStore(runContext, IncrementalStateStore.DB_FILENAME, null, CHUNK_SIZE).download(target);
+        assertThat(Files.readAllBytes(target), is(content));
+    }
+
+    @Test
+    void legacyState() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+        byte[] content = "legacy".getBytes();
+        runContext.stateStore().putState(IncrementalStateStore.STATE_NAME, IncrementalStateStore.DB_FILENAME, null, content);
+
+        Path target = Files.createTempFile("state", ".sqlite");
+        new IncrementalStateStore(runContext, IncrementalStateStore.DB_FILENAME, null, CHUNK_SIZE).download(target);
+
+        assertThat(Files.readAllBytes(target), is(content));
+    }
+
+    @Test
+    void emptyState() throws Exception {
+        Path target = Files.createTempFile("state", ".sqlite");
+        String fingerprint = new IncrementalStateStore(TestRunContexts.sync(runContextFactory), IncrementalStateStore.DB_FILENAME, null, CHUNK_SIZE).download(target);
+
+        assertThat(Files.size(target), is(0L));
+        assertThat(fingerprint, is(IncrementalStateStore.fingerprint(target)));
+    }
+
+    private static boolean exists(RunContext runContext, String chunkHash) throws Exception {
+        try (InputStream ignored = runContext.stateStore().getState(IncrementalStateStore.STATE_NAME, IncrementalStateStore.chunkName(IncrementalStateStore.DB_FILENAME, chunkHash), null)) {
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static IncrementalStateStore.Manifest manifest(RunContext runContext) throws Exception {
+        try (InputStream input = runContext.stateStore().getState(IncrementalStateStore.STATE_NAME, IncrementalStateStore.DB_FILENAME + ".manifest", null)) {
+            return JacksonMapper.ofJson().readValue(input, IncrementalStateStore.Manifest.class);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@KestraTest
+class InternalStorageDestinationTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void inject() {
+        List<Map<String, Object>> configs = new ArrayList<>(List.of(
+            new HashMap<>(Map.of("kind", "source", "spec", Map.of("name", "aws", "path", "cloudquery/aws", "destinations", List.of("postgresql")))),
+            new HashMap<>(Map.of("kind", "destination", "spec", Map.of("name", "postgresql", "path", "cloudquery/postgresql")))
+        ));
+
+        InternalStorageDestination.inject(configs, "kestra-tables", Sync.InternalStorageFormat.PARQUET, false);
+
+        assertThat(configs.size(), is(3));
+        assertThat(((Map<String, Object>) configs.get(0).get("spec")).get("destinations"), is(List.of("postgresql", InternalStorageDestination.NAME)));
+
+        Map<String, Object> destination = (Map<String, Object>) ((Map<String, Object>) configs.get(2).get("spec")).get("spec");
+        assertThat(destination.get("path"), is("kestra-tables/{{TABLE}}/{{UUID}}.{{FORMAT}}"));
+        assertThat(destination.get("format"), is("parquet"));
+        assertThat(destination.get("no_rotate"), is(false));
+    }
+
+    @Test
+    void upload() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+
+        Path directory = Files.createTempDirectory("kestra-tables");
+        Path file = directory.resolve("aws_s3_buckets").resolve("a.parquet");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "rows");
+
+        Map<String, List<URI>> uploaded = InternalStorageDestination.upload(runContext, directory, null);
+
+        assertThat(uploaded.get("aws_s3_buckets").size(), is(1));
+        assertThat(uploaded.get("aws_s3_buckets").get(0).getPath().endsWith("/aws_s3_buckets/a.parquet"), is(true));
+        try (InputStream input = runContext.storage().getFile(uploaded.get("aws_s3_buckets").get(0))) {
+            assertThat(new String(input.readAllBytes()), is("rows"));
+        }
+        assertThat(Files.exists(file), is(false));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void filePerTable() throws Exception {
+        List<Map<String, Object>> configs = new ArrayList<>(List.of(
+            new HashMap<>(Map.of("kind", "source", "spec", Map.of("name", "aws", "path", "cloudquery/aws")))
+        ));
+        InternalStorageDestination.inject(configs, "kestra-tables", Sync.InternalStorageFormat.PARQUET, true);
+
+        Map<String, Object> destination = (Map<String, Object>) ((Map<String, Object>) configs.get(1).get("spec")).get("spec");
+        assertThat(destination.get("path"), is("kestra-tables/{{TABLE}}/{{TABLE}}.{{FORMAT}}"));
+        assertThat(destination.get("no_rotate"), is(true));
+
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+
+        // two processes write a file with the same name for the same table, none of them is overwritten
+        List<URI> uris = new ArrayList<>();
+        for (String processName : List.of("shard-0", "shard-1")) {
+            Path directory = Files.createTempDirectory("kestra-tables");
+            Path file = directory.resolve("aws_s3_buckets").resolve("aws_s3_buckets.parquet");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, processName);
+
+            uris.addAll(InternalStorageDestination.upload(runContext, directory, processName).get("aws_s3_buckets"));
+        }
+
+        assertThat(uris.get(0).equals(uris.get(1)), is(false));
+        for (int i = 0; i < uris.size(); i++) {
+            try (InputStream input = runContext.storage().getFile(uris.get(i))) {
+                assertThat(new String(input.readAllBytes()), is("shard-" + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@KestraTest
+class KvCursorStoreTest {
+    private static final String TABLE = "kestra_incremental_table";
+
+    // the table as CloudQuery creates it, with more than the key and value columns
+    private static final String SCHEMA = "CREATE TABLE \"" + TABLE + "\" (\"key\" TEXT PRIMARY KEY NOT NULL, \"value\" TEXT, \"version\" INTEGER)";
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void run() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+
+        Path first = Files.createTempFile("cursors", ".sqlite");
+        KvCursorStore store = new KvCursorStore(runContext, TABLE, "incremental.sqlite");
+        assertThat(store.restore(first), is(0));
+
+        // what CloudQuery would write during the first sync
+        execute(first, SCHEMA);
+        execute(first, "INSERT INTO " + TABLE + " VALUES ('aws_cloudtrail_events:123456789012/us-east-1', '2024-01-01T00:00:00Z', 1)");
+        execute(first, "INSERT INTO " + TABLE + " VALUES ('aws_inspector_findings', '42', 3)");
+        assertThat(store.persist(first), is(2));
+
+        Path second = Files.createTempFile("cursors", ".sqlite");
+        store = new KvCursorStore(runContext, TABLE, "incremental.sqlite");
+        assertThat(store.restore(second), is(2));
+        assertThat(read(second).get("aws_cloudtrail_events:123456789012/us-east-1"), is("2024-01-01T00:00:00Z"));
+        assertThat(schema(second), is(SCHEMA));
+
+        // only the cursor that moved is written back
+        execute(second, "UPDATE " + TABLE + " SET value = '43', version = 4 WHERE key = 'aws_inspector_findings'");
+        assertThat(store.persist(second), is(1));
+    }
+
+    @Test
+    void processes() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+
+        // two fan-out sets of the same task, each with its own database
+        for (String process : List.of("0", "1")) {
+            Path db = Files.createTempFile("cursors", ".sqlite");
+            KvCursorStore store = new KvCursorStore(runContext, TABLE, "incremental-" + process + ".sqlite");
+            assertThat(store.restore(db), is(0));
+
+            execute(db, SCHEMA);
+            execute(db, "INSERT INTO " + TABLE + " VALUES ('aws_inspector_findings', '" + process + "', 1)");
+            assertThat(store.persist(db), is(1));
+        }
+
+        for (String process : List.of("0", "1")) {
+            Path db = Files.createTempFile("cursors", ".sqlite");
+            assertThat(new KvCursorStore(runContext, TABLE, "incremental-" + process + ".sqlite").restore(db), is(1));
+            assertThat(read(db).get("aws_inspector_findings"), is(process));
+        }
+    }
+
+    private static void execute(Path db, String sql) throws Exception {
+        try (Connection connection = connection(db); Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+    private static Map<String, String> read(Path db) throws Exception {
+        Map<String, String> result = new HashMap<>();
+        try (Connection connection = connection(db);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT key, value FROM " + TABLE)) {
+            while (resultSet.next()) {
+                result.put(resultSet.getString(1), resultSet.getString(2));
+            }
+        }
+
+        return result;
+    }
+
+    private static String schema(Path db) throws Exception {
+        try (Connection connection = connection(db);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT sql FROM sqlite_master WHERE name = '" + TABLE + "'")) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    private static Connection connection(Path db) throws Exception {
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + db.toAbsolutePath());
+        return dataSource.getConnection();
+    }
+}
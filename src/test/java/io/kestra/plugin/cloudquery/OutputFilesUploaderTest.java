@@ -0,0 +1,106 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@KestraTest
+class OutputFilesUploaderTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void upload() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+        Path workingDirectory = workingDirectory();
+
+        Map<String, URI> uploaded = new OutputFilesUploader(runContext, 4, false).upload(workingDirectory, List.of("tables/*.json"));
+
+        assertThat(uploaded.keySet(), is(Set.of("tables/a.json", "tables/b.json", "tables/c.json")));
+        try (InputStream input = runContext.storage().getFile(uploaded.get("tables/b.json"))) {
+            assertThat(new String(input.readAllBytes()), is("{\"table\":\"b\"}"));
+        }
+    }
+
+    @Test
+    void sameNameInDifferentDirectories() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+        Path workingDirectory = workingDirectory();
+        for (String shard : List.of("shard-0", "shard-1")) {
+            Files.createDirectories(workingDirectory.resolve(shard));
+            Files.writeString(workingDirectory.resolve(shard).resolve("a.json"), shard);
+        }
+
+        Map<String, URI> uploaded = new OutputFilesUploader(runContext, 2, false).upload(workingDirectory, List.of("*/a.json"));
+
+        assertThat(uploaded.keySet(), is(Set.of("tables/a.json", "shard-0/a.json", "shard-1/a.json")));
+        assertThat(Set.copyOf(uploaded.values()).size(), is(3));
+        for (String shard : List.of("shard-0", "shard-1")) {
+            try (InputStream input = runContext.storage().getFile(uploaded.get(shard + "/a.json"))) {
+                assertThat(new String(input.readAllBytes()), is(shard));
+            }
+        }
+        try (InputStream input = runContext.storage().getFile(uploaded.get("tables/a.json"))) {
+            assertThat(new String(input.readAllBytes()), is("{\"table\":\"a\"}"));
+        }
+    }
+
+    @Test
+    void compressed() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+        Path workingDirectory = workingDirectory();
+
+        Map<String, URI> uploaded = new OutputFilesUploader(runContext, 2, true).upload(workingDirectory, List.of("tables/a.json"));
+
+        assertThat(uploaded.size(), is(1));
+        try (InputStream input = new GZIPInputStream(runContext.storage().getFile(uploaded.get("tables/a.json.gz")))) {
+            assertThat(new String(input.readAllBytes()), is("{\"table\":\"a\"}"));
+        }
+    }
+
+    @Test
+    void watch() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+        Path workingDirectory = workingDirectory();
+
+        OutputFilesUploader uploader = new OutputFilesUploader(runContext, 2, false);
+        uploader.watch(workingDirectory, List.of("tables/*.json"), Duration.ofMillis(100));
+        Thread.sleep(500);
+
+        // written after its early upload, must be uploaded again
+        Files.writeString(workingDirectory.resolve("tables").resolve("c.json"), "{\"table\":\"c\",\"rows\":2}");
+
+        Map<String, URI> uploaded = uploader.upload(workingDirectory, List.of("tables/*.json"));
+
+        assertThat(uploaded.keySet(), is(Set.of("tables/a.json", "tables/b.json", "tables/c.json")));
+        try (InputStream input = runContext.storage().getFile(uploaded.get("tables/c.json"))) {
+            assertThat(new String(input.readAllBytes()), is("{\"table\":\"c\",\"rows\":2}"));
+        }
+        assertThat(Files.exists(workingDirectory.resolve("tables").resolve("a.json")), is(true));
+    }
+
+    private static Path workingDirectory() throws Exception {
+        Path workingDirectory = Files.createTempDirectory("working-dir");
+        Files.createDirectories(workingDirectory.resolve("tables"));
+        for (String table : List.of("a", "b", "c")) {
+            Files.writeString(workingDirectory.resolve("tables").resolve(table + ".json"), "{\"table\":\"" + table + "\"}");
+        }
+        Files.writeString(workingDirectory.resolve("cloudquery.log"), "");
+        return workingDirectory;
+    }
+}
@@ -0,0 +1,80 @@
+package io.kestra.plugin.cloudquery;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class PluginCacheTest {
+    private static final PluginReference AWS = new PluginReference("source", "cloudquery/aws", "v22.14.0", "cloudquery");
+    private static final PluginReference FILE = new PluginReference("destination", "cloudquery/file", "v3.4.8", "cloudquery");
+
+    @Test
+    void storeAndRestore() throws Exception {
+        Path cacheDirectory = Files.createTempDirectory("plugin-cache");
+        PluginCache cache = new PluginCache(cacheDirectory, 1024 * 1024, LoggerFactory.getLogger(PluginCacheTest.class));
+
+        Path first = Files.createTempDirectory("working-dir");
+        download(first, AWS, 100);
+        assertThat(cache.store(plugins(first)), is(100L));
+        // already cached
+        assertThat(cache.store(plugins(first)), is(0L));
+
+        Path second = Files.createTempDirectory("working-dir");
+        assertThat(cache.restore(plugins(second), List.of(AWS, FILE)), is(1));
+        assertThat(Files.size(plugin(second, AWS)), is(100L));
+        assertThat(Files.exists(plugin(second, FILE)), is(false));
+    }
+
+    @Test
+    void corrupted() throws Exception {
+        Path cacheDirectory = Files.createTempDirectory("plugin-cache");
+        PluginCache cache = new PluginCache(cacheDirectory, 1024 * 1024, LoggerFactory.getLogger(PluginCacheTest.class));
+
+        Path first = Files.createTempDirectory("working-dir");
+        download(first, AWS, 100);
+        cache.store(plugins(first));
+
+        Files.write(cacheDirectory.resolve(AWS.relativePath()).resolve("plugin"), new byte[10]);
+
+        Path second = Files.createTempDirectory("working-dir");
+        assertThat(cache.restore(plugins(second), List.of(AWS)), is(0));
+        assertThat(Files.exists(cacheDirectory.resolve(AWS.relativePath())), is(false));
+    }
+
+    @Test
+    void evict() throws Exception {
+        Path cacheDirectory = Files.createTempDirectory("plugin-cache");
+        PluginCache cache = new PluginCache(cacheDirectory, 150, LoggerFactory.getLogger(PluginCacheTest.class));
+
+        Path workingDirectory = Files.createTempDirectory("working-dir");
+        download(workingDirectory, AWS, 100);
+        cache.store(plugins(workingDirectory));
+        Thread.sleep(10);
+
+        download(workingDirectory, FILE, 100);
+        cache.store(plugins(workingDirectory));
+
+        assertThat(Files.exists(cacheDirectory.resolve(AWS.relativePath())), is(false));
+        assertThat(Files.exists(cacheDirectory.resolve(FILE.relativePath())), is(true));
+    }
+
+    private static void download(Path workingDirectory, PluginReference plugin, int size) throws Exception {
+        Path file = plugin(workingDirectory, plugin);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[size]);
+    }
+
+    private static Path plugin(Path workingDirectory, PluginReference plugin) {
+        return plugins(workingDirectory).resolve(plugin.relativePath()).resolve("plugin");
+    }
+
+    private static Path plugins(Path workingDirectory) {
+        return workingDirectory.resolve(PluginCache.DEFAULT_CQ_DIRECTORY).resolve("plugins");
+    }
+}
@@ -0,0 +1,60 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@KestraTest
+class PluginMirrorTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void run() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+
+        File archive = Files.createTempFile("aws_linux_amd64", ".zip").toFile();
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("plugin"));
+            zip.write("#!/bin/sh".getBytes());
+            zip.closeEntry();
+        }
+        URI uri = runContext.storage().putFile(archive);
+
+        Path workingDirectory = Files.createTempDirectory("working-dir");
+        Map<String, String> binaries = PluginMirror.materialize(runContext, workingDirectory, Map.of("cloudquery/aws@v22.14.0", uri.toString()));
+
+        Path binary = workingDirectory.resolve(binaries.get("cloudquery/aws@v22.14.0"));
+        assertThat(Files.readString(binary), is("#!/bin/sh"));
+        assertThat(Files.isExecutable(binary), is(true));
+
+        List<Map<String, Object>> configs = new ArrayList<>(List.of(
+            new HashMap<>(Map.of("kind", "source", "spec", Map.of("name", "aws", "path", "cloudquery/aws", "version", "v22.14.0"))),
+            new HashMap<>(Map.of("kind", "destination", "spec", Map.of("name", "file", "path", "cloudquery/file", "version", "v3.4.8")))
+        ));
+        PluginMirror.rewrite(configs, binaries);
+
+        Map<String, Object> source = (Map<String, Object>) configs.get(0).get("spec");
+        assertThat(source.get("registry"), is("local"));
+        assertThat(source.get("path"), is("./cloudquery-plugins/cloudquery/aws/v22.14.0/plugin"));
+        assertThat(((Map<String, Object>) configs.get(1).get("spec")).get("path"), is("cloudquery/file"));
+    }
+}
@@ -0,0 +1,35 @@
+package io.kestra.plugin.cloudquery;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class PluginReferenceTest {
+    @Test
+    void ofYaml() throws Exception {
+        String config = """
+            kind: source
+            spec:
+              name: hackernews
+              path: cloudquery/hackernews
+              version: v3.0.13
+              tables: ["*"]
+              destinations: ["duckdb"]
+            ---
+            kind: destination
+            spec:
+              name: duckdb
+              path: cloudquery/duckdb
+              registry: github
+              version: v4.2.10
+            """;
+
+        assertThat(PluginReference.ofYaml(config), is(List.of(
+            new PluginReference("source", "cloudquery/hackernews", "v3.0.13", "cloudquery"),
+            new PluginReference("destination", "cloudquery/duckdb", "v4.2.10", "github")
+        )));
+    }
+}
@@ -0,0 +1,74 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.IdUtils;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@KestraTest
+class PrefetchPluginsTest {
+    private static final List<Object> CONFIGS = List.of(
+        Map.of("kind", "source", "spec", Map.of("name", "aws", "path", "cloudquery/aws", "version", "v22.14.0", "tables", List.of("*"), "destinations", List.of("postgresql"))),
+        // the same plugin for another account
+        Map.of("kind", "source", "spec", Map.of("name", "aws-production", "path", "cloudquery/aws", "version", "v22.14.0", "tables", List.of("*"), "destinations", List.of("postgresql"))),
+        Map.of("kind", "destination", "spec", Map.of("name", "postgresql", "path", "cloudquery/postgresql", "version", "v8.0.7"))
+    );
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void cached() throws Exception {
+        Path cacheDirectory = Files.createTempDirectory("plugin-cache");
+        Path plugins = Files.createTempDirectory("working-dir").resolve("plugins");
+        for (PluginReference plugin : PluginReference.of(List.of(
+            Map.of("kind", "source", "spec", Map.of("path", "cloudquery/aws", "version", "v22.14.0")),
+            Map.of("kind", "destination", "spec", Map.of("path", "cloudquery/postgresql", "version", "v8.0.7"))
+        ))) {
+            Files.createDirectories(plugins.resolve(plugin.relativePath()));
+            Files.writeString(plugins.resolve(plugin.relativePath()).resolve("plugin"), "binary");
+        }
+        new PluginCache(cacheDirectory.resolve(PluginCache.CONTAINER_PLATFORM), 1024 * 1024, LoggerFactory.getLogger(PrefetchPluginsTest.class)).store(plugins);
+
+        PrefetchPlugins task = PrefetchPlugins.builder()
+            .id(IdUtils.create())
+            .type(PrefetchPlugins.class.getName())
+            .configs(CONFIGS)
+            .pluginCacheDirectory(Property.of(cacheDirectory.toString()))
+            .build();
+        RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+
+        // every plugin is cached, counted once however many configurations use it, so CloudQuery doesn't even run
+        PrefetchPlugins.Output output = task.run(runContext);
+        assertThat(output.getPlugins(), is(2));
+        assertThat(output.getCacheHits(), is(2));
+        assertThat(output.getBytesFetched(), is(0L));
+    }
+
+    @Test
+    void unsupportedProperties() {
+        PrefetchPlugins task = PrefetchPlugins.builder()
+            .id(IdUtils.create())
+            .type(PrefetchPlugins.class.getName())
+            .configs(CONFIGS)
+            .compressOutputFiles(Property.of(true))
+            .build();
+        RunContext runContext = TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+
+        assertThrows(IllegalArgumentException.class, () -> task.run(runContext));
+    }
+}
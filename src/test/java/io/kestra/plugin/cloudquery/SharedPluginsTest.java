@@ -0,0 +1,43 @@
+package io.kestra.plugin.cloudquery;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class SharedPluginsTest {
+    private static final PluginReference AWS = new PluginReference("source", "cloudquery/aws", "v22.14.0", "cloudquery");
+    private static final PluginReference FILE = new PluginReference("destination", "cloudquery/file", "v3.4.8", "cloudquery");
+
+    @Test
+    void install() throws Exception {
+        Path workingDirectory = Files.createTempDirectory("working-dir");
+        SharedPlugins shared = new SharedPlugins(workingDirectory);
+        AtomicInteger installs = new AtomicInteger();
+
+        shared.install(List.of(AWS, FILE), ".cq-fanout-a", () -> {
+            installs.incrementAndGet();
+            Path plugin = workingDirectory.resolve(PluginCache.DEFAULT_CQ_DIRECTORY).resolve("plugins").resolve(AWS.relativePath()).resolve("plugin");
+            Files.createDirectories(plugin.getParent());
+            Files.writeString(plugin, "#!/bin/sh");
+        });
+        // another parameter set using the same plugins doesn't install them again
+        shared.install(List.of(AWS, FILE), ".cq-fanout-b", installs::incrementAndGet);
+
+        assertThat(installs.get(), is(1));
+        for (String cqDirectory : List.of(".cq-fanout-a", ".cq-fanout-b")) {
+            Path plugins = workingDirectory.resolve(cqDirectory).resolve("plugins");
+            assertThat(Files.isSymbolicLink(plugins), is(true));
+            assertThat(Files.readString(plugins.resolve(AWS.relativePath()).resolve("plugin")), is("#!/bin/sh"));
+        }
+
+        // a new plugin is installed
+        shared.install(List.of(AWS, new PluginReference("destination", "cloudquery/postgresql", "v8.0.0", "cloudquery")), ".cq-fanout-c", installs::incrementAndGet);
+        assertThat(installs.get(), is(2));
+    }
+}
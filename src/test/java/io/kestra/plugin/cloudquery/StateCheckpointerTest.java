@@ -0,0 +1,143 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+@KestraTest
+class StateCheckpointerTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void run() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+
+        Path database = Files.createTempFile("state", ".sqlite");
+        execute(database, "CREATE TABLE cursors (\"key\" TEXT PRIMARY KEY, \"value\" TEXT)");
+        execute(database, "INSERT INTO cursors VALUES ('aws_s3_buckets', '2024-01-01')");
+
+        List<String> values = new CopyOnWriteArrayList<>();
+        try (StateCheckpointer ignored = new StateCheckpointer(runContext, database, Duration.ofMillis(50), snapshot -> {
+            values.add(value(snapshot));
+            return true;
+        })) {
+            Thread.sleep(300);
+        }
+
+        int checkpoints = values.size();
+        assertThat(checkpoints, greaterThan(0));
+        assertThat(values.get(0), is("2024-01-01"));
+
+        // no more checkpoints once closed
+        Thread.sleep(200);
+        assertThat(values.size(), is(checkpoints));
+    }
+
+    @Test
+    void consistentWhileWriting() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+
+        // every transaction moves both counters together, a torn snapshot would see them differ
+        Path database = Files.createTempFile("state", ".sqlite");
+        execute(database, "CREATE TABLE counters (\"key\" TEXT PRIMARY KEY, \"value\" INTEGER)");
+        execute(database, "INSERT INTO counters VALUES ('a', 0), ('b', 0)");
+        // large enough for a backup to take several steps
+        execute(database, "CREATE TABLE padding (\"value\" BLOB)");
+        execute(database, "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < 500) INSERT INTO padding SELECT randomblob(4096) FROM n");
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicBoolean persisting = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            try (Connection connection = connection(database)) {
+                connection.setAutoCommit(false);
+                while (writing.get()) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.executeUpdate("UPDATE counters SET \"value\" = \"value\" + 1 WHERE \"key\" = 'a'");
+                        statement.executeUpdate("UPDATE counters SET \"value\" = \"value\" + 1 WHERE \"key\" = 'b'");
+                    }
+                    connection.commit();
+                    // leave room for the backup to copy the pages between two transactions
+                    Thread.sleep(2);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+
+        List<List<Long>> snapshots = new CopyOnWriteArrayList<>();
+        try (StateCheckpointer ignored = new StateCheckpointer(runContext, database, Duration.ofMillis(20), snapshot -> {
+            persisting.set(true);
+            snapshots.add(counters(snapshot));
+            // a slow persister, closing must wait for it
+            Thread.sleep(100);
+            persisting.set(false);
+            return true;
+        })) {
+            Thread.sleep(1000);
+        } finally {
+            writing.set(false);
+            writer.join();
+        }
+
+        assertThat(persisting.get(), is(false));
+        assertThat(snapshots.size(), greaterThan(1));
+        for (List<Long> counters : snapshots) {
+            assertThat(counters.get(0), is(counters.get(1)));
+        }
+        // the snapshots were taken while the counters were moving
+        assertThat(snapshots.stream().map(counters -> counters.get(0)).distinct().count(), greaterThan(1L));
+    }
+
+    private static List<Long> counters(Path database) throws Exception {
+        try (Connection connection = connection(database);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT \"value\" FROM counters ORDER BY \"key\"")) {
+            List<Long> counters = new ArrayList<>();
+            while (resultSet.next()) {
+                counters.add(resultSet.getLong(1));
+            }
+            return counters;
+        }
+    }
+
+    private static void execute(Path database, String sql) throws Exception {
+        try (Connection connection = connection(database); Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+    private static String value(Path database) throws Exception {
+        try (Connection connection = connection(database);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT \"value\" FROM cursors")) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    private static Connection connection(Path database) throws Exception {
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + database.toAbsolutePath());
+        return dataSource.getConnection();
+    }
+}
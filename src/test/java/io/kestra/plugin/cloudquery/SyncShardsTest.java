@@ -0,0 +1,48 @@
+package io.kestra.plugin.cloudquery;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+class SyncShardsTest {
+    private static final Map<String, Object> DESTINATION = Map.of(
+        "kind", "destination",
+        "spec", Map.of("name", "file", "path", "cloudquery/file", "version", "v3.4.8")
+    );
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void split() {
+        Map<String, Object> source = Map.of(
+            "kind", "source",
+            "spec", Map.of("name", "aws", "path", "cloudquery/aws", "version", "v22.14.0", "tables", List.of("aws_s3*", "aws_ec2_instances", "aws_iam_users"))
+        );
+
+        List<List<Map<String, Object>>> shards = SyncShards.split(List.of(DESTINATION, source), 2);
+
+        assertThat(shards, hasSize(2));
+        assertThat(shards.get(0).get(0).get("kind"), is("destination"));
+        assertThat(shards.get(1).get(0).get("kind"), is("destination"));
+        assertThat((List<Object>) ((Map<String, Object>) shards.get(0).get(1).get("spec")).get("tables"), contains("aws_ec2_instances", "aws_s3*"));
+        assertThat((List<Object>) ((Map<String, Object>) shards.get(1).get(1).get("spec")).get("tables"), contains("aws_iam_users"));
+    }
+
+    @Test
+    void notSplittable() {
+        Map<String, Object> source = Map.of(
+            "kind", "source",
+            "spec", Map.of("name", "hackernews", "path", "cloudquery/hackernews", "version", "v3.0.13")
+        );
+
+        List<List<Map<String, Object>>> shards = SyncShards.split(List.of(source, DESTINATION), 4);
+
+        assertThat(shards, hasSize(1));
+        assertThat(shards.get(0), hasSize(2));
+    }
+}
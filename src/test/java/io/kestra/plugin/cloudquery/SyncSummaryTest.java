@@ -0,0 +1,51 @@
+package io.kestra.plugin.cloudquery;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class SyncSummaryTest {
+    @Test
+    void read() throws Exception {
+        Path file = Files.createTempFile("summary", ".json");
+        Files.writeString(file, """
+            {"resources":10,"source_errors":1,"source_warnings":2,"destination_errors":0,"destination_warnings":1,"source_name":"aws","destination_name":"postgresql"}
+            {"resources":10,"source_errors":1,"source_warnings":2,"destination_errors":1,"destination_warnings":0,"source_name":"aws","destination_name":"s3"}
+            {"resources":5,"source_errors":0,"source_warnings":1,"destination_errors":0,"destination_warnings":0,"source_name":"gcp","destination_name":"s3"}
+            """);
+
+        // the totals of a source syncing to two destinations are only counted once
+        SyncSummary summary = SyncSummary.read(file, Map.of("aws_s3_buckets", 5L), Duration.ofSeconds(3));
+        assertThat(summary.getRows(), is(15L));
+        assertThat(summary.getErrors(), is(2L));
+        assertThat(summary.getWarnings(), is(4L));
+        assertThat(summary.getTables(), is(Map.of("aws_s3_buckets", 5L)));
+        assertThat(summary.getDuration(), is(Duration.ofSeconds(3)));
+    }
+
+    @Test
+    void missingFile() throws Exception {
+        SyncSummary summary = SyncSummary.read(Path.of("missing.json"), Map.of("a", 2L, "b", 3L), Duration.ZERO);
+        assertThat(summary.getRows(), is(5L));
+    }
+
+    @Test
+    void merge() {
+        SyncSummary merged = SyncSummary.merge(List.of(
+            SyncSummary.builder().rows(2).tables(Map.of("a", 2L)).errors(1).warnings(0).duration(Duration.ofSeconds(1)).build(),
+            SyncSummary.builder().rows(3).tables(Map.of("a", 1L, "b", 2L)).errors(0).warnings(4).duration(Duration.ofSeconds(2)).build()
+        ), Duration.ofSeconds(2));
+
+        assertThat(merged.getRows(), is(5L));
+        assertThat(merged.getTables(), is(Map.of("a", 3L, "b", 2L)));
+        assertThat(merged.getErrors(), is(1L));
+        assertThat(merged.getWarnings(), is(4L));
+    }
+}
@@ -6,7 +6,6 @@ import io.kestra.core.runners.RunContextFactory;
 import io.kestra.core.utils.IdUtils;
 import io.kestra.core.utils.TestsUtils;
 import io.kestra.plugin.scripts.exec.scripts.models.DockerOptions;
-import io.kestra.plugin.scripts.exec.scripts.models.ScriptOutput;
 import io.kestra.core.junit.annotations.KestraTest;
 import jakarta.inject.Inject;
 import org.junit.jupiter.api.AfterAll;
@@ -14,17 +13,26 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.testcontainers.containers.localstack.LocalStackContainer;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import org.sqlite.SQLiteDataSource;
 import org.testcontainers.utility.DockerImageName;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.util.List;
 import java.util.Map;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
 
 @KestraTest
 @Testcontainers
 class SyncTest {
+    private static final String INCREMENTAL_TABLE = "kestra_incremental_table";
+
     public static String LOCALSTACK_VERSION = "localstack/localstack:1.4.0";
     protected static LocalStackContainer localstack;
     @Inject
@@ -55,39 +63,7 @@ class SyncTest {
                 "AWS_SECRET_ACCESS_KEY", localstack.getSecretKey(),
                 "AWS_DEFAULT_REGION", localstack.getRegion()
             )))
-            .configs(List.of(
-                Map.of(
-                    "kind", "destination",
-                    "spec", Map.of(
-                        "name", "file",
-                        "path", "cloudquery/file",
-                        "version", "v3.4.8",
-                        "spec", Map.of(
-                            "path", "./{{TABLE}}-{{UUID}}.{{FORMAT}}",
-                            "format", "json"
-                        )
-                    )
-                ),
-                Map.of(
-                    "kind", "source",
-                    "spec", Map.of(
-                        "name", "aws",
-                        "registry", "github",
-                        "path", "cloudquery/aws",
-                        "version", "v22.14.0",
-                        "tables", List.of("aws_s3*"),
-                        "destinations", List.of("file"),
-                        "spec", Map.of(
-                            "regions", List.of(localstack.getRegion()),
-                            "custom_endpoint_url", localstack.getEndpoint().toString(),
-                            "custom_endpoint_hostname_immutable", true,
-                            "custom_endpoint_partition_id", "aws",
-                            "custom_endpoint_signing_region", localstack.getRegion(),
-                            "max_retries", "0"
-                        )
-                    )
-                )
-            ))
+            .configs(configs())
             .incremental(Property.of(false))// TODO Disabled incremental as there is a bug with sqlite inside cloudquery docker
             .docker(DockerOptions.builder()
                 // needed to be able to reach localstack from inside the container
@@ -97,9 +73,100 @@ class SyncTest {
 
         RunContext runContext = TestsUtils.mockRunContext(runContextFactory, execute, Map.of());
 
-        ScriptOutput runOutput = execute.run(runContext);
+        Sync.Output runOutput = execute.run(runContext);
 
         assertThat(runOutput.getExitCode(), is(0));
+        assertThat(runOutput.getSummary().getErrors(), is(0L));
+        assertThat(runOutput.getCompleted(), is(true));
+    }
+
+    @Test
+    void incrementalKvStore() throws Exception {
+        // a first sync lets CloudQuery create its cursor table, stored along with the schema it was created with
+        Sync.Output first = incrementalTask().run(TestsUtils.mockRunContext(runContextFactory, incrementalTask(), Map.of()));
+        assertThat(first.getExitCode(), is(0));
+
+        RunContext runContext = TestsUtils.mockRunContext(runContextFactory, incrementalTask(), Map.of());
+        Path seeded = Files.createTempFile("cursors", ".sqlite");
+        KvCursorStore store = new KvCursorStore(runContext, INCREMENTAL_TABLE, IncrementalStateStore.DB_FILENAME);
+        store.restore(seeded);
+        try (Connection connection = connection(seeded); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO " + INCREMENTAL_TABLE + " (key, value) VALUES ('kestra_test_cursor', '42')");
+        }
+        assertThat(store.persist(seeded), is(1));
+
+        // CloudQuery opens the restored table and keeps the cursor it didn't sync
+        Sync.Output second = incrementalTask().run(TestsUtils.mockRunContext(runContextFactory, incrementalTask(), Map.of()));
+        assertThat(second.getExitCode(), is(0));
+        assertThat(second.getCompleted(), is(true));
+
+        Path restored = Files.createTempFile("cursors", ".sqlite");
+        assertThat(new KvCursorStore(runContext, INCREMENTAL_TABLE, IncrementalStateStore.DB_FILENAME).restore(restored), greaterThanOrEqualTo(1));
+        try (Connection connection = connection(restored);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT value FROM " + INCREMENTAL_TABLE + " WHERE key = 'kestra_test_cursor'")) {
+            assertThat(resultSet.next(), is(true));
+            assertThat(resultSet.getString(1), is("42"));
+        }
     }
 
+    private Sync incrementalTask() {
+        return Sync.builder()
+            .id("incremental-kv-store")
+            .type(Sync.class.getName())
+            .env(Property.of(Map.of(
+                "AWS_ACCESS_KEY_ID", localstack.getAccessKey(),
+                "AWS_SECRET_ACCESS_KEY", localstack.getSecretKey(),
+                "AWS_DEFAULT_REGION", localstack.getRegion()
+            )))
+            .configs(configs())
+            .incremental(Property.of(true))
+            .incrementalBackend(Property.of(Sync.IncrementalBackend.KV_STORE))
+            .docker(DockerOptions.builder()
+                .networkMode("host")
+                .build())
+            .build();
+    }
+
+    private static List<Map<String, Object>> configs() {
+        return List.of(
+            Map.of(
+                "kind", "destination",
+                "spec", Map.of(
+                    "name", "file",
+                    "path", "cloudquery/file",
+                    "version", "v3.4.8",
+                    "spec", Map.of(
+                        "path", "./{{TABLE}}-{{UUID}}.{{FORMAT}}",
+                        "format", "json"
+                    )
+                )
+            ),
+            Map.of(
+                "kind", "source",
+                "spec", Map.of(
+                    "name", "aws",
+                    "registry", "github",
+                    "path", "cloudquery/aws",
+                    "version", "v22.14.0",
+                    "tables", List.of("aws_s3*"),
+                    "destinations", List.of("file"),
+                    "spec", Map.of(
+                        "regions", List.of(localstack.getRegion()),
+                        "custom_endpoint_url", localstack.getEndpoint().toString(),
+                        "custom_endpoint_hostname_immutable", true,
+                        "custom_endpoint_partition_id", "aws",
+                        "custom_endpoint_signing_region", localstack.getRegion(),
+                        "max_retries", "0"
+                    )
+                )
+            )
+        );
+    }
+
+    private static Connection connection(Path db) throws Exception {
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + db.toAbsolutePath());
+        return dataSource.getConnection();
+    }
 }
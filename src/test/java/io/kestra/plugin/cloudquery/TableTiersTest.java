@@ -0,0 +1,74 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@KestraTest
+class TableTiersTest {
+    private static final List<Map<String, Object>> CONFIGS = List.of(
+        Map.of("kind", "source", "spec", Map.of("name", "aws", "path", "cloudquery/aws", "tables", List.of("aws_ec2_instances", "aws_iam_users", "aws_iam_roles"))),
+        Map.of("kind", "destination", "spec", Map.of("name", "postgresql", "path", "cloudquery/postgresql"))
+    );
+    private static final Map<String, Duration> INTERVALS = Map.of("aws_iam_*", Duration.ofDays(1));
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void run() throws Exception {
+        RunContext runContext = TestRunContexts.sync(runContextFactory);
+        Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        // never synced, every table is due
+        TableTiers first = new TableTiers(runContext, INTERVALS);
+        assertThat(tables(first.due(CONFIGS, now)), is(List.of("aws_ec2_instances", "aws_iam_users", "aws_iam_roles")));
+        first.save(now);
+
+        // 15 minutes later, only the untiered table
+        TableTiers second = new TableTiers(runContext, INTERVALS);
+        assertThat(tables(second.due(CONFIGS, now.plus(Duration.ofMinutes(15)))), is(List.of("aws_ec2_instances")));
+        second.save(now.plus(Duration.ofMinutes(15)));
+
+        // a day later, slightly early
+        TableTiers third = new TableTiers(runContext, INTERVALS);
+        assertThat(tables(third.due(CONFIGS, now.plus(Duration.ofHours(24).minusMinutes(1)))), is(List.of("aws_ec2_instances", "aws_iam_users", "aws_iam_roles")));
+    }
+
+    @Test
+    void overlappingPatterns() throws Exception {
+        Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        // the most specific pattern applies, whatever the order in which they are declared
+        for (List<String> order : List.of(List.of("aws_*", "aws_iam_*"), List.of("aws_iam_*", "aws_*"))) {
+            Map<String, Duration> intervals = new LinkedHashMap<>();
+            order.forEach(pattern -> intervals.put(pattern, pattern.equals("aws_*") ? Duration.ofHours(1) : Duration.ofDays(1)));
+
+            RunContext runContext = TestRunContexts.sync(runContextFactory);
+
+            TableTiers first = new TableTiers(runContext, intervals);
+            first.due(CONFIGS, now);
+            first.save(now);
+
+            // two hours later, only the hourly tier is due
+            TableTiers second = new TableTiers(runContext, intervals);
+            assertThat(tables(second.due(CONFIGS, now.plus(Duration.ofHours(2)))), is(List.of("aws_ec2_instances")));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> tables(List<Map<String, Object>> configs) {
+        return (List<Object>) ((Map<String, Object>) configs.get(0).get("spec")).get("tables");
+    }
+}
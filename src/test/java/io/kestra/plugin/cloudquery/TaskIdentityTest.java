@@ -0,0 +1,21 @@
+package io.kestra.plugin.cloudquery;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+class TaskIdentityTest {
+    @Test
+    void key() {
+        TaskIdentity flowAB = new TaskIdentity(null, "company.team", "a_b", "c", null, "execution");
+        TaskIdentity taskBC = new TaskIdentity(null, "company.team", "a", "b_c", null, "execution");
+
+        // joined and sanitized, both would be 'a_b_c'
+        assertThat(flowAB.key(), not(taskBC.key()));
+        assertThat(flowAB.key(), is(new TaskIdentity(null, "company.team", "a_b", "c", null, "other").key()));
+        assertThat(flowAB.key("shard-0"), not(flowAB.key("shard-1")));
+        assertThat(flowAB.key().length(), is(32));
+    }
+}
@@ -0,0 +1,30 @@
+package io.kestra.plugin.cloudquery;
+
+import io.kestra.core.runners.RunContext;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.IdUtils;
+import io.kestra.core.utils.TestsUtils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Run contexts for the tests of the helpers of {@link Sync}, which only need the storages of a task run.
+ */
+final class TestRunContexts {
+    private TestRunContexts() {
+    }
+
+    /**
+     * A run context of a new {@link Sync} task, so that tests don't share their state store, KV store or storage.
+     */
+    static RunContext sync(RunContextFactory runContextFactory) {
+        Sync task = Sync.builder()
+            .id(IdUtils.create())
+            .type(Sync.class.getName())
+            .configs(List.of())
+            .build();
+
+        return TestsUtils.mockRunContext(runContextFactory, task, Map.of());
+    }
+}
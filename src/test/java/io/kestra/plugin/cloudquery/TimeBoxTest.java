@@ -0,0 +1,55 @@
+package io.kestra.plugin.cloudquery;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class TimeBoxTest {
+    @Test
+    void completed() throws Exception {
+        Path workingDirectory = Files.createTempDirectory("working-dir");
+        List<String> command = TimeBox.wrap(
+            "/bin/sh",
+            List.of("-c", "echo \"$1\" > out.txt; exit 3", "sh", "it's a 'quoted' $arg"),
+            Duration.ofSeconds(3599),
+            ".stopped"
+        );
+
+        assertThat(run(workingDirectory, command), is(3));
+        assertThat(Files.readString(workingDirectory.resolve("out.txt")), is("it's a 'quoted' $arg\n"));
+        assertThat(Files.exists(workingDirectory.resolve(".stopped")), is(false));
+
+        // the watchdog doesn't leave its sleep behind
+        Thread.sleep(200);
+        assertThat(ProcessHandle.allProcesses().anyMatch(process -> process.info().commandLine().orElse("").contains("sleep 3599")), is(false));
+    }
+
+    @Test
+    void stopped() throws Exception {
+        Path workingDirectory = Files.createTempDirectory("working-dir");
+        // exits with the usual code of an interrupted process once the watchdog created the marker
+        List<String> command = TimeBox.wrap(
+            "/bin/sh",
+            List.of("-c", "while [ ! -f .stopped ]; do sleep 0.1; done; exit 130"),
+            Duration.ofMillis(500),
+            ".stopped"
+        );
+
+        assertThat(run(workingDirectory, command), is(0));
+        assertThat(Files.exists(workingDirectory.resolve(".stopped")), is(true));
+    }
+
+    private static int run(Path workingDirectory, List<String> command) throws Exception {
+        Process process = new ProcessBuilder(command)
+            .directory(workingDirectory.toFile())
+            .inheritIO()
+            .start();
+        return process.waitFor();
+    }
+}